@@ -87,7 +87,7 @@ public class PombeAllelesConverter extends BioFileConverter
     public void process(Reader reader) throws ObjectStoreException, IOException {
         setDefaultDataset();
 
-        BufferedReader br = new BufferedReader(reader);
+        BufferedReader br = new BufferedReader(CompressedInput.reader(getCurrentFile(), reader));
         String line;
         // loop through entire file
         while ((line = br.readLine()) != null) {
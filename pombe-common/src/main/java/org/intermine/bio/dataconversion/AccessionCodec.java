@@ -0,0 +1,137 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Packs UniProt accessions into longs and back. An accession is 6 or 10 characters of
+ * [OPQ][0-9][A-Z0-9]{3}[0-9] or [A-NR-Z][0-9]([A-Z][A-Z0-9]{2}[0-9]){1,2}, optionally
+ * followed by an isoform number, eg. P12345-2.
+ * <p>
+ * The characters are taken as a base 36 number, which for 10 characters fits in 52 bits. Bit
+ * 52 marks a 10 character accession and the 10 bits above it hold the isoform number, so
+ * every code is positive. Strings that aren't accessions, including isoform numbers with
+ * leading zeros or above 1023, encode to NONE and have to be kept some other way.
+ * </p>
+ */
+public final class AccessionCodec
+{
+    /**
+     * Returned by encode() for strings that aren't accessions.
+     */
+    public static final long NONE = -1;
+
+    private static final int LONG_FLAG_BIT = 52;
+    private static final int ISOFORM_SHIFT = 53;
+    private static final int MAX_ISOFORM = (1 << 10) - 1;
+    private static final long CHARS_MASK = (1L << LONG_FLAG_BIT) - 1;
+
+    private AccessionCodec() {
+        // static methods only
+    }
+
+    /**
+     * @param accession a UniProt accession, possibly of an isoform
+     * @return the code, or NONE if the string isn't an accession
+     */
+    public static long encode(String accession) {
+        int length = accession.length();
+        int dash = accession.indexOf('-');
+        int end = (dash < 0) ? length : dash;
+        if (!isAccession(accession, end)) {
+            return NONE;
+        }
+        long isoform = 0;
+        if (dash >= 0) {
+            // no sign, no leading zero, so that decode() gives back the same string
+            if (dash == length - 1 || accession.charAt(dash + 1) == '0'
+                    || length - dash - 1 > 4) {
+                return NONE;
+            }
+            for (int i = dash + 1; i < length; i++) {
+                char c = accession.charAt(i);
+                if (c < '0' || c > '9') {
+                    return NONE;
+                }
+                isoform = isoform * 10 + (c - '0');
+            }
+            if (isoform > MAX_ISOFORM) {
+                return NONE;
+            }
+        }
+        long chars = 0;
+        for (int i = 0; i < end; i++) {
+            chars = chars * 36 + digit(accession.charAt(i));
+        }
+        long longForm = (end == 10) ? 1L << LONG_FLAG_BIT : 0;
+        return (isoform << ISOFORM_SHIFT) | longForm | chars;
+    }
+
+    /**
+     * @param code a code returned by encode()
+     * @return the accession
+     */
+    public static String decode(long code) {
+        if (code < 0) {
+            throw new IllegalArgumentException("Not an accession code: " + code);
+        }
+        int length = ((code >>> LONG_FLAG_BIT) & 1) == 1 ? 10 : 6;
+        char[] chars = new char[length];
+        long rest = code & CHARS_MASK;
+        for (int i = length - 1; i >= 0; i--) {
+            int digit = (int) (rest % 36);
+            chars[i] = (char) (digit < 10 ? '0' + digit : 'A' + digit - 10);
+            rest /= 36;
+        }
+        long isoform = code >>> ISOFORM_SHIFT;
+        String accession = new String(chars);
+        return (isoform == 0) ? accession : accession + "-" + isoform;
+    }
+
+    // the first end characters against the accession grammar
+    private static boolean isAccession(String s, int end) {
+        if (end != 6 && end != 10) {
+            return false;
+        }
+        char first = s.charAt(0);
+        if (!isLetter(first) || !isNumber(s.charAt(1)) || !isNumber(s.charAt(5))) {
+            return false;
+        }
+        boolean opq = first == 'O' || first == 'P' || first == 'Q';
+        if (opq) {
+            // only ever 6 characters, the third can be a number
+            return end == 6 && isAlphanumeric(s.charAt(2)) && isAlphanumeric(s.charAt(3))
+                && isAlphanumeric(s.charAt(4));
+        }
+        for (int block = 2; block < end; block += 4) {
+            if (!isLetter(s.charAt(block)) || !isAlphanumeric(s.charAt(block + 1))
+                    || !isAlphanumeric(s.charAt(block + 2)) || !isNumber(s.charAt(block + 3))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digit(char c) {
+        return (c <= '9') ? c - '0' : c - 'A' + 10;
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isNumber(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAlphanumeric(char c) {
+        return isLetter(c) || isNumber(c);
+    }
+}
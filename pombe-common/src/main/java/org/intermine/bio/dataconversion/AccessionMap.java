@@ -0,0 +1,86 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Map keyed by UniProt accession. Accessions are held as codes from AccessionCodec in a
+ * LongHashMap, any other key in a HashMap, so keys that aren't accessions still work. Not
+ * thread safe. Values can't be null.
+ *
+ * @param <V> type of the values
+ */
+public class AccessionMap<V>
+{
+    private final LongHashMap<V> accessions = new LongHashMap<V>();
+    private final Map<String, V> others = new HashMap<String, V>();
+
+    /**
+     * @param key an accession, or any other key
+     * @return the value, or null if the key isn't in the map
+     */
+    public V get(String key) {
+        long code = AccessionCodec.encode(key);
+        return (code == AccessionCodec.NONE) ? others.get(key) : accessions.get(code);
+    }
+
+    /**
+     * @param key an accession, or any other key
+     * @param value the value, not null
+     * @return the previous value, or null if the key wasn't in the map
+     */
+    public V put(String key, V value) {
+        long code = AccessionCodec.encode(key);
+        return (code == AccessionCodec.NONE) ? others.put(key, value)
+            : accessions.put(code, value);
+    }
+
+    /**
+     * @param key an accession, or any other key
+     * @param function makes the value if the key isn't in the map yet
+     * @return the value in the map
+     */
+    public V computeIfAbsent(String key, Function<String, V> function) {
+        long code = AccessionCodec.encode(key);
+        if (code == AccessionCodec.NONE) {
+            return others.computeIfAbsent(key, function);
+        }
+        return accessions.computeIfAbsent(code, c -> function.apply(key));
+    }
+
+    /**
+     * @param map keys and values to add
+     */
+    public void putAll(Map<String, V> map) {
+        for (Map.Entry<String, V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return number of keys in the map
+     */
+    public int size() {
+        return accessions.size() + others.size();
+    }
+
+    /**
+     * @return a copy of the map with String keys, eg. to write out
+     */
+    public Map<String, V> toMap() {
+        Map<String, V> map = new HashMap<String, V>(others);
+        accessions.forEach((code, value) -> map.put(AccessionCodec.decode(code), value));
+        return map;
+    }
+}
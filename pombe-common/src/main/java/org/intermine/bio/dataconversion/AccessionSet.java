@@ -0,0 +1,68 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Set of UniProt accessions, as AccessionMap: codes in a LongHashSet, anything that isn't an
+ * accession in a HashSet. Checking a string costs encoding it and one probe. Not thread safe.
+ */
+public class AccessionSet
+{
+    private final LongHashSet accessions = new LongHashSet();
+    private final Set<String> others = new HashSet<String>();
+
+    /**
+     * @param key an accession, or any other string
+     * @return true if it wasn't already in the set
+     */
+    public boolean add(String key) {
+        long code = AccessionCodec.encode(key);
+        return (code == AccessionCodec.NONE) ? others.add(key) : accessions.add(code);
+    }
+
+    /**
+     * @param key an accession, or any other string
+     * @return true if it's in the set
+     */
+    public boolean contains(String key) {
+        long code = AccessionCodec.encode(key);
+        return (code == AccessionCodec.NONE) ? others.contains(key) : accessions.contains(code);
+    }
+
+    /**
+     * @param keys strings to add
+     */
+    public void addAll(Collection<String> keys) {
+        for (String key : keys) {
+            add(key);
+        }
+    }
+
+    /**
+     * @return number of strings in the set
+     */
+    public int size() {
+        return accessions.size() + others.size();
+    }
+
+    /**
+     * @return a copy of the set as Strings, eg. to write out
+     */
+    public Set<String> toSet() {
+        Set<String> set = new HashSet<String>(others);
+        accessions.forEach(code -> set.add(AccessionCodec.decode(code)));
+        return set;
+    }
+}
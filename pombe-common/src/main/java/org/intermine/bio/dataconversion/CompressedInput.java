@@ -0,0 +1,112 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * Opens source files that may be gzip (.gz) or zstd (.zst) compressed. Compressed files are
+ * decompressed as they are read, on a read-ahead thread, so no decompressed copy is needed.
+ */
+public final class CompressedInput
+{
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String ZSTD_SUFFIX = ".zst";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CompressedInput() {
+        // don't instantiate
+    }
+
+    /**
+     * @param file a source file
+     * @return true if the file name ends in .gz or .zst
+     */
+    public static boolean isCompressed(File file) {
+        return file != null && !file.getName().equals(stripSuffix(file.getName()));
+    }
+
+    /**
+     * @param fileName a file name, eg. 4896_uniprot_sprot.xml.gz
+     * @return the name without a compression suffix, eg. 4896_uniprot_sprot.xml
+     */
+    public static String stripSuffix(String fileName) {
+        if (fileName.endsWith(GZIP_SUFFIX)) {
+            return fileName.substring(0, fileName.length() - GZIP_SUFFIX.length());
+        }
+        if (fileName.endsWith(ZSTD_SUFFIX)) {
+            return fileName.substring(0, fileName.length() - ZSTD_SUFFIX.length());
+        }
+        return fileName;
+    }
+
+    /**
+     * Open a file for reading, decompressing it if the name ends in .gz or .zst.
+     *
+     * @param file the file to read
+     * @return buffered stream of the (decompressed) contents
+     * @throws IOException if the file can't be opened
+     */
+    public static InputStream openStream(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        String fileName = file.getName();
+        try {
+            if (fileName.endsWith(GZIP_SUFFIX)) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            } else if (fileName.endsWith(ZSTD_SUFFIX)) {
+                in = new ZstdInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            } else {
+                return new BufferedInputStream(in, BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new ReadAheadInputStream(in, fileName);
+    }
+
+    /**
+     * @param file the file to read, UTF-8 text
+     * @return buffered reader of the (decompressed) contents
+     * @throws IOException if the file can't be opened
+     */
+    public static Reader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(openStream(file), StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+    }
+
+    /**
+     * For BioFileConverter.process(): the framework opens every file as plain text, so a
+     * compressed current file is opened again here, otherwise the framework's reader is used.
+     *
+     * @param currentFile the converter's current file, may be null
+     * @param reader the reader passed to process()
+     * @return a reader of the decompressed contents, or reader if the file isn't compressed
+     * @throws IOException if the file can't be opened
+     */
+    public static Reader reader(File currentFile, Reader reader) throws IOException {
+        if (!isCompressed(currentFile)) {
+            return reader;
+        }
+        return openReader(currentFile);
+    }
+}
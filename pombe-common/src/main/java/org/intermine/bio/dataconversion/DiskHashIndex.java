@@ -0,0 +1,345 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * String to string map kept in a memory-mapped file, so the heap only holds a Bloom filter of
+ * about a byte per slot however many keys there are. Most lookups are for keys that aren't
+ * there, and the Bloom filter answers those without touching the file.
+ * <p>
+ * Keys and values are ASCII, keys up to 48 characters and values up to 32, eg. md5 checksums,
+ * accessions and item identifiers. The table is open addressing in fixed size slots and is
+ * rewritten at twice the size when three quarters full. An existing file is opened as it is.
+ * </p>
+ */
+public class DiskHashIndex implements Closeable
+{
+    private static final int MAGIC = 0x50484958;
+    private static final int HEADER_SIZE = 64;
+    private static final int KEY_WIDTH = 48;
+    private static final int VALUE_WIDTH = 32;
+    private static final int SLOT_SIZE = KEY_WIDTH + VALUE_WIDTH;
+    // slots per mapped buffer, mappings are limited to 2Gb
+    private static final int SEGMENT_BITS = 20;
+    private static final long INITIAL_CAPACITY = 1 << 16;
+    private static final int BLOOM_BITS_PER_SLOT = 8;
+    private static final int BLOOM_HASHES = 5;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private long capacity;
+    private long size;
+    private long[] bloom;
+
+    /**
+     * @param file the index, created if it doesn't exist
+     * @throws IOException if the file can't be opened or isn't an index
+     */
+    public DiskHashIndex(File file) throws IOException {
+        this(file, INITIAL_CAPACITY);
+    }
+
+    private DiskHashIndex(File file, long initialCapacity) throws IOException {
+        this.file = file;
+        boolean exists = file.exists() && file.length() > 0;
+        raf = new RandomAccessFile(file, "rw");
+        if (exists) {
+            header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != KEY_WIDTH
+                    || header.getInt(8) != VALUE_WIDTH) {
+                raf.close();
+                throw new IOException(file + " isn't an index");
+            }
+            capacity = header.getLong(16);
+            size = header.getLong(24);
+            map();
+        } else {
+            capacity = initialCapacity;
+            raf.setLength(HEADER_SIZE + capacity * SLOT_SIZE);
+            header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            header.putInt(4, KEY_WIDTH);
+            header.putInt(8, VALUE_WIDTH);
+            header.putLong(16, capacity);
+            header.putLong(24, 0);
+            map();
+        }
+    }
+
+    // map the slots and fill the Bloom filter from them
+    private void map() throws IOException {
+        long segmentSlots = Math.min(capacity, 1L << SEGMENT_BITS);
+        segments = new MappedByteBuffer[(int) (capacity / segmentSlots)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + i * segmentSlots * SLOT_SIZE, segmentSlots * SLOT_SIZE);
+        }
+        bloom = new long[(int) Math.max(1, capacity * BLOOM_BITS_PER_SLOT / 64)];
+        for (long slot = 0; slot < capacity; slot++) {
+            if (!isEmpty(slot)) {
+                addToBloom(hash(readKey(slot)));
+            }
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the value, or null if the key isn't in the index
+     */
+    public synchronized String get(String key) {
+        byte[] keyBytes = encodeKey(key);
+        long hash = hash(keyBytes);
+        if (!mightContain(hash)) {
+            return null;
+        }
+        long slot = find(keyBytes, hash);
+        return isEmpty(slot) ? null : readValue(slot);
+    }
+
+    /**
+     * @param key the key
+     * @return true if the key is in the index
+     */
+    public boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key the key
+     * @param value value to store if the key isn't in the index yet
+     * @return the value already stored for the key, or null if this value was stored
+     * @throws IOException if the index has to grow and can't be rewritten
+     */
+    public synchronized String putIfAbsent(String key, String value) throws IOException {
+        byte[] keyBytes = encodeKey(key);
+        byte[] valueBytes = encode(value, VALUE_WIDTH);
+        long hash = hash(keyBytes);
+        if (mightContain(hash)) {
+            long slot = find(keyBytes, hash);
+            if (!isEmpty(slot)) {
+                return readValue(slot);
+            }
+        }
+        if ((size + 1) * 4 > capacity * 3) {
+            grow();
+        }
+        write(find(keyBytes, hash), keyBytes, valueBytes);
+        addToBloom(hash);
+        size++;
+        header.putLong(24, size);
+        return null;
+    }
+
+    /**
+     * @return number of keys in the index
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @param action called with every key, in no particular order
+     * @throws IOException if the action throws it
+     */
+    public synchronized void forEachKey(KeyAction action) throws IOException {
+        for (long slot = 0; slot < capacity; slot++) {
+            if (!isEmpty(slot)) {
+                action.accept(decode(readKey(slot)));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        header.force();
+        raf.close();
+    }
+
+    // rewrite the slots into a file twice the size, then replace this file with it
+    private void grow() throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Files.deleteIfExists(tmpFile.toPath());
+        DiskHashIndex bigger = new DiskHashIndex(tmpFile, capacity * 2);
+        for (long slot = 0; slot < capacity; slot++) {
+            if (!isEmpty(slot)) {
+                byte[] keyBytes = readKey(slot);
+                byte[] valueBytes = read(slot, KEY_WIDTH, VALUE_WIDTH);
+                long hash = hash(keyBytes);
+                bigger.write(bigger.find(keyBytes, hash), keyBytes, valueBytes);
+            }
+        }
+        bigger.header.putLong(24, size);
+        bigger.close();
+        raf.close();
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        raf = new RandomAccessFile(file, "rw");
+        header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        capacity = header.getLong(16);
+        map();
+    }
+
+    // the slot holding the key, or the empty slot it would go in
+    private long find(byte[] keyBytes, long hash) {
+        long mask = capacity - 1;
+        long slot = hash & mask;
+        while (!isEmpty(slot) && !keyEquals(slot, keyBytes)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private MappedByteBuffer buffer(long slot) {
+        return segments[(int) (slot >>> SEGMENT_BITS)];
+    }
+
+    private int offset(long slot) {
+        return (int) (slot & ((1L << SEGMENT_BITS) - 1)) * SLOT_SIZE;
+    }
+
+    private boolean isEmpty(long slot) {
+        return buffer(slot).get(offset(slot)) == 0;
+    }
+
+    private boolean keyEquals(long slot, byte[] keyBytes) {
+        MappedByteBuffer buffer = buffer(slot);
+        int offset = offset(slot);
+        for (int i = 0; i < KEY_WIDTH; i++) {
+            if (buffer.get(offset + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readKey(long slot) {
+        return read(slot, 0, KEY_WIDTH);
+    }
+
+    private String readValue(long slot) {
+        return decode(read(slot, KEY_WIDTH, VALUE_WIDTH));
+    }
+
+    private byte[] read(long slot, int from, int width) {
+        MappedByteBuffer buffer = buffer(slot);
+        int offset = offset(slot) + from;
+        byte[] bytes = new byte[width];
+        for (int i = 0; i < width; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return bytes;
+    }
+
+    private void write(long slot, byte[] keyBytes, byte[] valueBytes) {
+        MappedByteBuffer buffer = buffer(slot);
+        int offset = offset(slot);
+        for (int i = 0; i < KEY_WIDTH; i++) {
+            buffer.put(offset + i, keyBytes[i]);
+        }
+        for (int i = 0; i < VALUE_WIDTH; i++) {
+            buffer.put(offset + KEY_WIDTH + i, valueBytes[i]);
+        }
+    }
+
+    private boolean mightContain(long hash) {
+        long bits = bloom.length * 64L;
+        long step = (hash >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Long.remainderUnsigned(hash + i * step, bits);
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addToBloom(long hash) {
+        long bits = bloom.length * 64L;
+        long step = (hash >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Long.remainderUnsigned(hash + i * step, bits);
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    // an empty key would look like an empty slot
+    private static byte[] encodeKey(String key) {
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("Empty key");
+        }
+        return encode(key, KEY_WIDTH);
+    }
+
+    // zero padded ASCII
+    private static byte[] encode(String s, int width) {
+        byte[] bytes = new byte[width];
+        if (s.length() > width) {
+            throw new IllegalArgumentException("Longer than " + width + " characters: " + s);
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == 0 || c > 127) {
+                throw new IllegalArgumentException("Not ASCII: " + s);
+            }
+            bytes[i] = (byte) c;
+        }
+        return bytes;
+    }
+
+    private static String decode(byte[] bytes) {
+        int length = 0;
+        while (length < bytes.length && bytes[length] != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    // 64 bit FNV-1a, with the murmur3 finaliser to spread the low bits used for slots
+    private static long hash(byte[] keyBytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < keyBytes.length && keyBytes[i] != 0; i++) {
+            hash ^= keyBytes[i];
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb33fa7988e1bL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Something done with each key of an index.
+     */
+    public interface KeyAction
+    {
+        /**
+         * @param key a key of the index
+         * @throws IOException if the action fails
+         */
+        void accept(String key) throws IOException;
+    }
+}
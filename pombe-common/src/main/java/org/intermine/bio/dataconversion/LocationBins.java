@@ -0,0 +1,89 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UCSC genome browser style hierarchical bins. Each Location gets the smallest bin that holds
+ * it, so a region query only has to look at Locations in the bins overlappingBins() returns
+ * instead of comparing start and end of every Location.
+ * <p>
+ * Coordinates are 0-based half-open, as in UCSC: a Location with 1-based start s and end e
+ * is the range s - 1 to e.
+ * </p>
+ */
+public final class LocationBins
+{
+    // smallest bins are 128kb, each level up is 8 times bigger
+    private static final int FIRST_SHIFT = 17;
+    private static final int NEXT_SHIFT = 3;
+    // standard scheme, to 512Mb
+    private static final int[] OFFSETS = {512 + 64 + 8 + 1, 64 + 8 + 1, 8 + 1, 1, 0};
+    private static final int MAX_END = 1 << 29;
+    // extended scheme, to 4Gb, numbered after the standard bins
+    private static final int[] EXTENDED_OFFSETS = {4096 + 512 + 64 + 8 + 1, 512 + 64 + 8 + 1,
+        64 + 8 + 1, 8 + 1, 1, 0};
+    private static final int EXTENDED_OFFSET = 4681;
+
+    private LocationBins() {
+        // don't instantiate
+    }
+
+    /**
+     * @param start 0-based start
+     * @param end end, exclusive, greater than start
+     * @return the smallest bin holding the whole range
+     */
+    public static int binFromRange(long start, long end) {
+        if (start < 0 || end <= start) {
+            throw new IllegalArgumentException("Bad range " + start + ".." + end);
+        }
+        int[] offsets = (end <= MAX_END) ? OFFSETS : EXTENDED_OFFSETS;
+        long startBin = start >> FIRST_SHIFT;
+        long endBin = (end - 1) >> FIRST_SHIFT;
+        for (int offset : offsets) {
+            if (startBin == endBin) {
+                int bin = (int) (offset + startBin);
+                return (end <= MAX_END) ? bin : EXTENDED_OFFSET + bin;
+            }
+            startBin >>= NEXT_SHIFT;
+            endBin >>= NEXT_SHIFT;
+        }
+        throw new IllegalArgumentException("Range " + start + ".." + end + " too big to bin");
+    }
+
+    /**
+     * Every bin a Location overlapping the range can be in, for an IN constraint. Only the
+     * standard scheme, ie. chromosomes up to 512Mb.
+     *
+     * @param start 0-based start
+     * @param end end, exclusive
+     * @return bins to search, smallest bins first
+     */
+    public static List<Integer> overlappingBins(long start, long end) {
+        if (start < 0 || end <= start || end > MAX_END) {
+            throw new IllegalArgumentException("Bad range " + start + ".." + end);
+        }
+        List<Integer> bins = new ArrayList<>();
+        long startBin = start >> FIRST_SHIFT;
+        long endBin = (end - 1) >> FIRST_SHIFT;
+        for (int offset : OFFSETS) {
+            for (long bin = startBin; bin <= endBin; bin++) {
+                bins.add((int) (offset + bin));
+            }
+            startBin >>= NEXT_SHIFT;
+            endBin >>= NEXT_SHIFT;
+        }
+        return bins;
+    }
+}
@@ -0,0 +1,147 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.function.LongFunction;
+
+/**
+ * Map from longs to objects in two open addressing arrays, as LongHashSet, without a boxed
+ * Long and an entry object for every key. Values can't be null.
+ *
+ * @param <V> type of the values
+ */
+public class LongHashMap<V>
+{
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    // 0 marks an empty slot, so the value for 0 itself is held in zeroValue
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private V zeroValue = null;
+    private int size = 0;
+
+    /**
+     * Called with each key and value by forEach().
+     *
+     * @param <V> type of the values
+     */
+    public interface EntryConsumer<V>
+    {
+        /**
+         * @param key the key
+         * @param value its value
+         */
+        void accept(long key, V value);
+    }
+
+    /**
+     * @param key the key
+     * @return the value, or null if the key isn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        return (V) values[find(keys, key)];
+    }
+
+    /**
+     * @param key the key
+     * @param value the value, not null
+     * @return the previous value, or null if the key wasn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null value for key " + key);
+        }
+        if (key == 0) {
+            V previous = zeroValue;
+            if (previous == null) {
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int slot = find(keys, key);
+        V previous = (V) values[slot];
+        values[slot] = value;
+        if (previous == null) {
+            keys[slot] = key;
+            size++;
+            if (size * 4L > keys.length * 3L) {
+                grow();
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * @param key the key
+     * @param function makes the value if the key isn't in the map yet
+     * @return the value in the map
+     */
+    public V computeIfAbsent(long key, LongFunction<V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return number of keys in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param action called with every key and value, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<V> action) {
+        if (zeroValue != null) {
+            action.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = find(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // the slot holding the key, or the empty slot it would go in
+    private static int find(long[] table, long key) {
+        int mask = table.length - 1;
+        int slot = (int) LongHashSet.mix(key) & mask;
+        while (table[slot] != 0 && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,137 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.function.LongConsumer;
+
+/**
+ * Set of longs in one open addressing array, eight bytes a key rather than the sixty or so
+ * of a boxed Long in a HashSet. Used for 64 bit hashes of composite keys, see hash().
+ */
+public class LongHashSet
+{
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    // 0 marks an empty slot, so 0 itself is held in hasZero
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private boolean hasZero = false;
+    private int size = 0;
+
+    /**
+     * @param key the key
+     * @return true if the key wasn't already in the set
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int slot = find(keys, key);
+        if (keys[slot] == key) {
+            return false;
+        }
+        keys[slot] = key;
+        size++;
+        if (size * 4L > keys.length * 3L) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @param key the key
+     * @return true if the key is in the set
+     */
+    public boolean contains(long key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        return keys[find(keys, key)] == key;
+    }
+
+    /**
+     * @return number of keys in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param action called with every key, in no particular order
+     */
+    public void forEach(LongConsumer action) {
+        if (hasZero) {
+            action.accept(0);
+        }
+        for (long key : keys) {
+            if (key != 0) {
+                action.accept(key);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        keys = new long[oldKeys.length * 2];
+        for (long key : oldKeys) {
+            if (key != 0) {
+                keys[find(keys, key)] = key;
+            }
+        }
+    }
+
+    // the slot holding the key, or the empty slot it would go in
+    private static int find(long[] table, long key) {
+        int mask = table.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (table[slot] != 0 && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * 64 bit hash of some strings taken together, eg. the subject and value of a Synonym.
+     * Different lists of strings can hash the same, but with 64 bits it's unlikely for the
+     * numbers of keys a converter sees.
+     *
+     * @param parts the strings
+     * @return the hash
+     */
+    public static long hash(String... parts) {
+        // FNV-1a over the chars, with a separator between the parts
+        long hash = 0xcbf29ce484222325L;
+        for (String part : parts) {
+            for (int i = 0; i < part.length(); i++) {
+                hash ^= part.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= 0xffff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // murmur3 finaliser, spreads the bits into the low bits used for slots
+    static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb33fa7988e1bL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
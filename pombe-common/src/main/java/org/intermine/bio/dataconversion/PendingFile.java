@@ -0,0 +1,75 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * State an incremental converter keeps for its next run, eg. fingerprints of what it has
+ * loaded, is only true once the items are integrated. The converter writes it to a .pending
+ * file next to the real one, and the build promotes it once the source has been integrated:
+ * <pre>
+ *   ./gradlew :pombe-common:promotePending -Dpending.files=FILE,...
+ * </pre>
+ * If the load fails the pending file is never promoted, and the next run converts the same
+ * changes again.
+ */
+public final class PendingFile
+{
+    private static final String SUFFIX = ".pending";
+
+    private PendingFile() {
+        // static methods only
+    }
+
+    /**
+     * @param file the state file
+     * @return the pending file written in its place until the load is integrated
+     */
+    public static File of(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Replace the state file with its pending file.
+     *
+     * @param file the state file
+     * @return false if there was no pending file
+     * @throws IOException if the pending file can't be moved
+     */
+    public static boolean promote(File file) throws IOException {
+        File pending = of(file);
+        if (!pending.exists()) {
+            return false;
+        }
+        Files.move(pending.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * Promote the pending files of the state files given, run once the source is integrated.
+     *
+     * @param args paths of the state files
+     * @throws IOException if a pending file can't be moved
+     */
+    public static void main(String[] args) throws IOException {
+        for (String fileName : args) {
+            if (promote(new File(fileName))) {
+                System.out.println("Promoted " + of(new File(fileName)));
+            } else {
+                System.out.println("No pending file for " + fileName);
+            }
+        }
+    }
+}
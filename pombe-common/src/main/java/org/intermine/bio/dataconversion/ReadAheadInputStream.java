@@ -0,0 +1,152 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another stream on its own thread, a few chunks ahead of the caller, so eg.
+ * decompression runs alongside parsing. The underlying stream is closed by the read-ahead
+ * thread once it reaches the end of the data. An error in the read-ahead thread is thrown by
+ * the next read, or by close() if the caller stops reading first.
+ */
+public class ReadAheadInputStream extends InputStream
+{
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int QUEUE_CHUNKS = 16;
+    // marks the end of the data, or an error in the read-ahead thread
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+    private final Thread thread;
+    private volatile Exception error;
+    // true once the error has been thrown to the caller
+    private boolean errorThrown = false;
+    private byte[] current;
+    private int position;
+
+    /**
+     * @param in stream to read ahead of the caller
+     * @param name used to name the read-ahead thread
+     */
+    public ReadAheadInputStream(InputStream in, String name) {
+        thread = new Thread(() -> fill(in), "read-ahead " + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void fill(InputStream in) {
+        try {
+            try (InputStream input = in) {
+                int count;
+                do {
+                    byte[] chunk = new byte[CHUNK_SIZE];
+                    count = readFully(input, chunk);
+                    if (count > 0) {
+                        queue.put(count == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, count));
+                    }
+                } while (count == CHUNK_SIZE);
+            } catch (IOException | RuntimeException e) {
+                error = e;
+            }
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // the stream was closed before all the data was read
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] chunk) throws IOException {
+        int count = 0;
+        while (count < chunk.length) {
+            int read = in.read(chunk, count, chunk.length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+
+    // false at the end of the data
+    private boolean nextChunk() throws IOException {
+        if (current == END) {
+            if (error != null && !errorThrown) {
+                errorThrown = true;
+                throw readAheadError();
+            }
+            return false;
+        }
+        if (current != null && position < current.length) {
+            return true;
+        }
+        try {
+            current = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + thread.getName());
+        }
+        position = 0;
+        return nextChunk();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return (current == null || current == END) ? 0 : current.length - position;
+    }
+
+    private IOException readAheadError() {
+        return new IOException("Error in read-ahead thread " + thread.getName(), error);
+    }
+
+    /**
+     * Stops the read-ahead thread if it hasn't reached the end of the data yet.
+     *
+     * @throws IOException if the read-ahead thread failed and no read has thrown the error yet
+     */
+    @Override
+    public void close() throws IOException {
+        // before interrupting, so an error caused by closing isn't thrown
+        boolean failed = error != null && !errorThrown;
+        thread.interrupt();
+        current = END;
+        if (failed) {
+            errorThrown = true;
+            throw readAheadError();
+        }
+    }
+}
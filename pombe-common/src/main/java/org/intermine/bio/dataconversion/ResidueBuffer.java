@@ -0,0 +1,244 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Compact holder for residues between parsing and storing the Sequence item. Nucleotides are
+ * packed 2 bits per base with an exception list for N and other IUPAC codes, protein residues
+ * take one byte each. The String is only built by toString(), when the residues attribute is
+ * set.
+ */
+public abstract class ResidueBuffer
+{
+    // more exceptions than this fraction of the length and byte-per-residue is smaller
+    private static final int MAX_EXCEPTION_RATIO = 16;
+    private static final int DIGEST_CHUNK = 8192;
+
+    /**
+     * @return number of residues
+     */
+    public abstract int length();
+
+    /**
+     * Copy residues as ASCII bytes.
+     *
+     * @param from first residue to copy
+     * @param to residue after the last one to copy
+     * @param dest array to copy into, from index 0
+     */
+    protected abstract void copyTo(int from, int to, byte[] dest);
+
+    /**
+     * @return the residues
+     */
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length()];
+        copyTo(0, bytes.length, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Append the residues in chunks without building the String.
+     *
+     * @param builder builder to append to
+     */
+    public void appendTo(StringBuilder builder) {
+        int length = length();
+        byte[] chunk = new byte[Math.min(length, DIGEST_CHUNK)];
+        for (int from = 0; from < length; from += chunk.length) {
+            int to = Math.min(length, from + chunk.length);
+            copyTo(from, to, chunk);
+            for (int i = 0; i < to - from; i++) {
+                builder.append((char) chunk[i]);
+            }
+        }
+    }
+
+    /**
+     * md5 of the residues, computed in chunks without building the String.
+     *
+     * @return lower case hex checksum, as SequenceRegistry.md5checksum()
+     */
+    public String md5checksum() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        int length = length();
+        byte[] chunk = new byte[Math.min(length, DIGEST_CHUNK)];
+        for (int from = 0; from < length; from += chunk.length) {
+            int to = Math.min(length, from + chunk.length);
+            copyTo(from, to, chunk);
+            digest.update(chunk, 0, to - from);
+        }
+        return SequenceRegistry.toHex(digest.digest());
+    }
+
+    /**
+     * @param residues DNA or RNA residues
+     * @return packed buffer
+     */
+    public static ResidueBuffer nucleotides(CharSequence residues) {
+        NucleotideBuilder builder = new NucleotideBuilder(residues.length());
+        for (int i = 0; i < residues.length(); i++) {
+            builder.append((byte) residues.charAt(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param residues amino acid residues
+     * @return buffer of one byte per residue
+     */
+    public static ResidueBuffer protein(CharSequence residues) {
+        byte[] bytes = new byte[residues.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) residues.charAt(i);
+        }
+        return new ByteResidues(bytes);
+    }
+
+    /**
+     * Builds a nucleotide buffer one ASCII residue at a time, eg. straight from a FASTA file.
+     */
+    public static class NucleotideBuilder
+    {
+        private final int length;
+        private final byte[] packed;
+        private int[] exceptionPositions = new int[4];
+        private byte[] exceptionValues = new byte[4];
+        private int exceptionCount = 0;
+        private int position = 0;
+
+        /**
+         * @param length number of residues that will be appended
+         */
+        public NucleotideBuilder(int length) {
+            this.length = length;
+            this.packed = new byte[(length + 3) / 4];
+        }
+
+        /**
+         * @param residue next residue, as an ASCII byte
+         */
+        public void append(byte residue) {
+            int code = code(residue);
+            if (code < 0) {
+                if (exceptionCount == exceptionPositions.length) {
+                    exceptionPositions = Arrays.copyOf(exceptionPositions, exceptionCount * 2);
+                    exceptionValues = Arrays.copyOf(exceptionValues, exceptionCount * 2);
+                }
+                exceptionPositions[exceptionCount] = position;
+                exceptionValues[exceptionCount] = residue;
+                exceptionCount++;
+            } else {
+                packed[position >> 2] |= code << ((position & 3) << 1);
+            }
+            position++;
+        }
+
+        /**
+         * @return the buffer, packed unless most residues aren't A, C, G or T
+         */
+        public ResidueBuffer build() {
+            if (position != length) {
+                throw new IllegalStateException("Expected " + length + " residues but got "
+                        + position);
+            }
+            if (exceptionCount > length / MAX_EXCEPTION_RATIO) {
+                byte[] bytes = new byte[length];
+                new PackedNucleotides(length, packed, exceptionPositions, exceptionValues,
+                        exceptionCount).copyTo(0, length, bytes);
+                return new ByteResidues(bytes);
+            }
+            return new PackedNucleotides(length, packed,
+                    Arrays.copyOf(exceptionPositions, exceptionCount),
+                    Arrays.copyOf(exceptionValues, exceptionCount), exceptionCount);
+        }
+
+        private static int code(byte residue) {
+            switch (residue) {
+                case 'A':
+                    return 0;
+                case 'C':
+                    return 1;
+                case 'G':
+                    return 2;
+                case 'T':
+                    return 3;
+                default:
+                    return -1;
+            }
+        }
+    }
+
+    private static class PackedNucleotides extends ResidueBuffer
+    {
+        private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+        private final int length;
+        private final byte[] packed;
+        private final int[] exceptionPositions;
+        private final byte[] exceptionValues;
+        private final int exceptionCount;
+
+        PackedNucleotides(int length, byte[] packed, int[] exceptionPositions,
+                byte[] exceptionValues, int exceptionCount) {
+            this.length = length;
+            this.packed = packed;
+            this.exceptionPositions = exceptionPositions;
+            this.exceptionValues = exceptionValues;
+            this.exceptionCount = exceptionCount;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        protected void copyTo(int from, int to, byte[] dest) {
+            for (int i = from; i < to; i++) {
+                dest[i - from] = BASES[(packed[i >> 2] >> ((i & 3) << 1)) & 3];
+            }
+            int e = Arrays.binarySearch(exceptionPositions, 0, exceptionCount, from);
+            for (e = (e < 0) ? -e - 1 : e; e < exceptionCount && exceptionPositions[e] < to; e++) {
+                dest[exceptionPositions[e] - from] = exceptionValues[e];
+            }
+        }
+    }
+
+    private static class ByteResidues extends ResidueBuffer
+    {
+        private final byte[] bytes;
+
+        ByteResidues(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        protected void copyTo(int from, int to, byte[] dest) {
+            System.arraycopy(bytes, from, dest, 0, to - from);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed register of the Sequence items a converter has created, keyed on the
+ * md5 checksum of the residues, so each distinct residue string is only created once.
+ * <p>
+ * The checksums can be saved to a file and loaded by the next source. A sequence already
+ * created by an earlier source is then created without its residues, and integration merges
+ * it with the earlier one on the Sequence.key_md5checksum key.
+ * </p>
+ * <p>
+ * The file starts with the id of the build it was written for. Each source sharing the file
+ * sets the same build id, and a file from any other build is refused, as its sequences
+ * aren't in this build's database.
+ * </p>
+ */
+public class SequenceRegistry
+{
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final String BUILD_HEADER = "#build\t";
+
+    // md5 checksum -> Sequence item identifier, this run only
+    private Map<String, String> refIds = new ConcurrentHashMap<>();
+    // md5 checksums of sequences created by earlier sources
+    private Set<String> loaded = ConcurrentHashMap.newKeySet();
+    // replaces refIds if set
+    private DiskHashIndex index = null;
+    // id of the build the file belongs to
+    private String build = null;
+
+    /**
+     * Set the id of the build, the same for every source sharing the file in one build, eg.
+     * the date the build started. Call before load() or save().
+     *
+     * @param build the build id
+     */
+    public void setBuild(String build) {
+        this.build = build;
+    }
+
+    /**
+     * Keep this run's checksums in an index on disk rather than on the heap. Call before
+     * any sequences are registered.
+     *
+     * @param index an empty index
+     */
+    public void setIndex(DiskHashIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Read the checksums written by an earlier source of this build. Does nothing if the file
+     * doesn't exist yet.
+     *
+     * @param file file written by save()
+     * @throws IOException if the file can't be read, or was written for another build
+     */
+    public void load(File file) throws IOException {
+        checkBuild(file);
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(BUILD_HEADER)) {
+                throw new IOException("Sequence registry " + file + " has no build id, remove it"
+                        + " before starting the build");
+            }
+            String fileBuild = line.substring(BUILD_HEADER.length());
+            if (!build.equals(fileBuild)) {
+                // its sequences would be taken as stored, and created without residues
+                throw new IOException("Sequence registry " + file + " was written for build "
+                        + fileBuild + " not " + build + ", remove it before starting the build");
+            }
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    loaded.add(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the checksums of all sequences seen so far, by this or earlier sources.
+     *
+     * @param file file to write, replaced once the new file is complete
+     * @throws IOException if the file can't be written
+     */
+    public void save(File file) throws IOException {
+        checkBuild(file);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tmpFile))) {
+            writer.write(BUILD_HEADER + build);
+            writer.newLine();
+            for (String md5checksum : loaded) {
+                writer.write(md5checksum);
+                writer.newLine();
+            }
+            for (String md5checksum : refIds.keySet()) {
+                if (!loaded.contains(md5checksum)) {
+                    writer.write(md5checksum);
+                    writer.newLine();
+                }
+            }
+            if (index != null) {
+                index.forEachKey(md5checksum -> {
+                    if (!loaded.contains(md5checksum)) {
+                        writer.write(md5checksum);
+                        writer.newLine();
+                    }
+                });
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void checkBuild(File file) {
+        if (build == null) {
+            throw new IllegalStateException("No build id set for sequence registry " + file);
+        }
+    }
+
+    /**
+     * @return md5 checksum -> Sequence item identifier for the sequences created by this run,
+     * empty if kept in an index
+     */
+    public Map<String, String> getRefIds() {
+        return Collections.unmodifiableMap(refIds);
+    }
+
+    /**
+     * Register sequences created earlier in this run, eg. before the run was restarted.
+     *
+     * @param sequenceRefIds md5 checksum -> Sequence item identifier
+     */
+    public void addRefIds(Map<String, String> sequenceRefIds) {
+        refIds.putAll(sequenceRefIds);
+    }
+
+    /**
+     * @param md5checksum checksum of the residues
+     * @return true if an earlier source has already created this sequence
+     */
+    public boolean isLoaded(String md5checksum) {
+        return loaded.contains(md5checksum);
+    }
+
+    /**
+     * Get the Sequence item identifier for these residues, creating the item the first time
+     * the checksum is seen.
+     *
+     * @param md5checksum checksum of the residues
+     * @param createSequence creates and stores the Sequence item, returns its identifier
+     * @return the Sequence item identifier
+     */
+    public String getRefId(String md5checksum, Supplier<String> createSequence) {
+        if (index == null) {
+            return refIds.computeIfAbsent(md5checksum, key -> createSequence.get());
+        }
+        synchronized (index) {
+            String refId = index.get(md5checksum);
+            if (refId == null) {
+                refId = createSequence.get();
+                try {
+                    index.putIfAbsent(md5checksum, refId);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return refId;
+        }
+    }
+
+    /**
+     * Lower case hex md5 of the residues, the same format UniProt entries use.
+     *
+     * @param residues the sequence
+     * @return the md5 checksum
+     */
+    public static String md5checksum(String residues) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        return toHex(digest.digest(residues.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * @param bytes a digest
+     * @return the digest as lower case hex
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,87 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class AccessionCodecTest extends TestCase
+{
+    public AccessionCodecTest(String arg) {
+        super(arg);
+    }
+
+    public void testRoundTrip() throws Exception {
+        String[] accessions = {"P12345", "Q9UQ13", "O00000", "A2BC19", "Z9ZZZ9",
+            "A0A022YWF9", "Z9Z9Z9Z9Z9", "P12345-2", "A0A022YWF9-1023", "Q9UQ13-10"};
+        for (String accession : accessions) {
+            long code = AccessionCodec.encode(accession);
+            assertTrue(accession, code >= 0);
+            assertEquals(accession, AccessionCodec.decode(code));
+        }
+        assertFalse(AccessionCodec.encode("P12345") == AccessionCodec.encode("P12345-1"));
+        assertFalse(AccessionCodec.encode("A0B000") == AccessionCodec.encode("A0B000A0A0"));
+    }
+
+    public void testNotAccessions() throws Exception {
+        String[] strings = {"", "P1234", "p12345", "P12345A", "O0A0A0A0A0", "A0A0A0A0A",
+            "AA2345", "A12345", "1P2345", "P12345-", "P12345-0", "P12345-02", "P12345-1024",
+            "P12345-x", "P12345_r3", "SPAC1002.01.1:pep"};
+        for (String string : strings) {
+            assertEquals(string, AccessionCodec.NONE, AccessionCodec.encode(string));
+        }
+    }
+
+    public void testLongHashMap() throws Exception {
+        LongHashMap<String> map = new LongHashMap<String>();
+        int count = 100000;
+        for (int i = 0; i < count; i++) {
+            assertNull(map.put(i * 31L, "v" + i));
+        }
+        assertEquals("v1", map.put(31L, "w1"));
+        assertEquals(count, map.size());
+        assertEquals("w1", map.get(31L));
+        assertEquals("v0", map.get(0));
+        assertNull(map.get(1));
+        assertEquals("v2", map.computeIfAbsent(62L, key -> "x"));
+        assertEquals("x", map.computeIfAbsent(1L, key -> "x"));
+        Map<Long, String> copy = new HashMap<Long, String>();
+        map.forEach((key, value) -> copy.put(key, value));
+        assertEquals(count + 1, copy.size());
+        assertEquals("v99999", copy.get(99999 * 31L));
+    }
+
+    public void testAccessionMap() throws Exception {
+        AccessionMap<String> map = new AccessionMap<String>();
+        map.put("P12345", "1_1");
+        map.put("P12345_r3", "1_2");
+        assertEquals("1_1", map.get("P12345"));
+        assertEquals("1_2", map.get("P12345_r3"));
+        assertNull(map.get("P12345-2"));
+        assertEquals("1_1", map.computeIfAbsent("P12345", key -> "1_3"));
+        assertEquals(2, map.size());
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("P12345", "1_1");
+        expected.put("P12345_r3", "1_2");
+        assertEquals(expected, map.toMap());
+
+        AccessionSet set = new AccessionSet();
+        assertTrue(set.add("A0A022YWF9"));
+        assertFalse(set.add("A0A022YWF9"));
+        assertTrue(set.add("TA5"));
+        assertTrue(set.contains("TA5"));
+        assertFalse(set.contains("A0A022YWF8"));
+        assertEquals(expected.keySet().size(), set.size());
+        assertEquals(2, set.toSet().size());
+    }
+}
@@ -0,0 +1,139 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+public class CompressedInputTest extends TestCase
+{
+    private File dir;
+
+    public CompressedInputTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        dir = File.createTempFile("compressed-input", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    public void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testStripSuffix() throws Exception {
+        assertEquals("4896_uniprot_sprot.xml",
+                CompressedInput.stripSuffix("4896_uniprot_sprot.xml.gz"));
+        assertEquals("genes.json", CompressedInput.stripSuffix("genes.json.zst"));
+        assertEquals("genes.json", CompressedInput.stripSuffix("genes.json"));
+    }
+
+    public void testGzip() throws Exception {
+        // several read-ahead chunks
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            text.append("SPAC1002.").append(i).append("\tGO:0005634\n");
+        }
+        File file = new File(dir, "annotations.tsv.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue(CompressedInput.isCompressed(file));
+        assertEquals(text.toString(), read(CompressedInput.reader(file, null)));
+    }
+
+    public void testPlainFileUsesConverterReader() throws Exception {
+        File file = new File(dir, "annotations.tsv");
+        Reader reader = new StringReader("plain");
+        assertFalse(CompressedInput.isCompressed(file));
+        assertSame(reader, CompressedInput.reader(file, reader));
+        assertSame(reader, CompressedInput.reader(null, reader));
+    }
+
+    public void testCorruptFile() throws Exception {
+        File file = new File(dir, "broken.xml.gz");
+        writeTruncatedGzip(file);
+        try (InputStream in = CompressedInput.openStream(file)) {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) >= 0) {
+                // read to the end
+            }
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // expected, the error is passed on from the read-ahead thread
+        }
+    }
+
+    public void testErrorBeforeClose() throws Exception {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("disk error");
+            }
+        };
+        InputStream in = new ReadAheadInputStream(failing, "failing");
+        // let the read-ahead thread fail before the stream is closed unread
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("read-ahead failing".equals(thread.getName())) {
+                thread.join();
+            }
+        }
+        try {
+            in.close();
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertEquals("disk error", e.getCause().getMessage());
+        }
+        assertEquals(-1, in.read());
+    }
+
+    private static String read(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader br = new BufferedReader(reader)) {
+            char[] buffer = new char[4096];
+            int count;
+            while ((count = br.read(buffer)) >= 0) {
+                text.append(buffer, 0, count);
+            }
+        }
+        return text.toString();
+    }
+
+    // a gzip file cut off part way through
+    private static void writeTruncatedGzip(File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            for (int i = 0; i < 10000; i++) {
+                out.write(("<entry>" + i + "</entry>\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        byte[] data = bytes.toByteArray();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data, 0, data.length / 2);
+        }
+    }
+}
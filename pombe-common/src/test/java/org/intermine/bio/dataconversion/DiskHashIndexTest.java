@@ -0,0 +1,70 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class DiskHashIndexTest extends TestCase
+{
+    private File file;
+
+    public DiskHashIndexTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("disk-hash-index", ".idx");
+        file.delete();
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testPutIfAbsent() throws Exception {
+        try (DiskHashIndex index = new DiskHashIndex(file)) {
+            assertNull(index.get("P12345"));
+            assertNull(index.putIfAbsent("P12345", "0_UniProtEntry_1"));
+            assertEquals("0_UniProtEntry_1", index.putIfAbsent("P12345", "0_UniProtEntry_2"));
+            assertEquals("0_UniProtEntry_1", index.get("P12345"));
+            assertNull(index.putIfAbsent("Q9UT37", ""));
+            assertTrue(index.containsKey("Q9UT37"));
+            assertFalse(index.containsKey("Q9UT38"));
+            assertEquals(2, index.size());
+        }
+    }
+
+    public void testGrowAndReopen() throws Exception {
+        // several times the initial capacity
+        int count = 200000;
+        try (DiskHashIndex index = new DiskHashIndex(file)) {
+            for (int i = 0; i < count; i++) {
+                assertNull(index.putIfAbsent(SequenceRegistry.md5checksum("M" + i), "" + i));
+            }
+            assertEquals(count, index.size());
+        }
+        try (DiskHashIndex index = new DiskHashIndex(file)) {
+            assertEquals(count, index.size());
+            for (int i = 0; i < count; i += 997) {
+                assertEquals("" + i, index.get(SequenceRegistry.md5checksum("M" + i)));
+            }
+            assertNull(index.get(SequenceRegistry.md5checksum("M" + count)));
+            Set<String> keys = new HashSet<String>();
+            index.forEachKey(keys::add);
+            assertEquals(count, keys.size());
+            assertTrue(keys.contains(SequenceRegistry.md5checksum("M0")));
+        }
+    }
+}
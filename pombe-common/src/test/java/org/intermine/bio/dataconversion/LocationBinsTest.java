@@ -0,0 +1,44 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LocationBinsTest extends TestCase
+{
+    public LocationBinsTest(String arg) {
+        super(arg);
+    }
+
+    public void testBinFromRange() throws Exception {
+        // values from the UCSC binFromRange()
+        assertEquals(585, LocationBins.binFromRange(0, 1));
+        assertEquals(585, LocationBins.binFromRange(0, 131072));
+        assertEquals(73, LocationBins.binFromRange(0, 131073));
+        assertEquals(598, LocationBins.binFromRange(1798346, 1799015));
+        assertEquals(1, LocationBins.binFromRange(0, 1 << 26));
+        assertEquals(0, LocationBins.binFromRange(0, 1 << 29));
+        assertEquals(4681 + 4681 + 4096, LocationBins.binFromRange(1L << 29, (1L << 29) + 10));
+    }
+
+    public void testOverlappingBins() throws Exception {
+        List<Integer> bins = LocationBins.overlappingBins(1798346, 1799015);
+        assertTrue(bins.contains(598));
+        assertTrue(bins.contains(0));
+        // every bin a feature overlapping the range is stored in is searched
+        for (long start = 1648347; start < 1799015; start += 997) {
+            int bin = LocationBins.binFromRange(start, start + 150000);
+            assertTrue(bins.contains(bin));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class LongHashSetTest extends TestCase
+{
+    public LongHashSetTest(String arg) {
+        super(arg);
+    }
+
+    public void testAdd() throws Exception {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.add(LongHashSet.hash("0_UniProtEntry_1", "P12345")));
+        assertFalse(set.add(LongHashSet.hash("0_UniProtEntry_1", "P12345")));
+        assertTrue(set.add(LongHashSet.hash("0_UniProtEntry_2", "P12345")));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertFalse(set.contains(1));
+        assertEquals(3, set.size());
+    }
+
+    public void testHashSeparatesParts() throws Exception {
+        assertFalse(LongHashSet.hash("ab", "c") == LongHashSet.hash("a", "bc"));
+        assertFalse(LongHashSet.hash("abc") == LongHashSet.hash("abc", ""));
+    }
+
+    public void testGrow() throws Exception {
+        LongHashSet set = new LongHashSet();
+        int count = 100000;
+        for (int i = 0; i < count; i++) {
+            assertTrue(set.add(i * 31L));
+        }
+        assertEquals(count, set.size());
+        for (int i = 0; i < count; i++) {
+            assertTrue(set.contains(i * 31L));
+            assertFalse(set.contains(i * 31L + 1));
+        }
+        Set<Long> keys = new HashSet<Long>();
+        set.forEach(key -> keys.add(key));
+        assertEquals(count, keys.size());
+    }
+}
@@ -0,0 +1,46 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+public class PendingFileTest extends TestCase
+{
+    private File file;
+
+    public PendingFileTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("state", ".txt");
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+        PendingFile.of(file).delete();
+    }
+
+    public void testPromote() throws Exception {
+        Files.write(file.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+        assertFalse(PendingFile.promote(file));
+        assertEquals("old", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+
+        Files.write(PendingFile.of(file).toPath(), "new".getBytes(StandardCharsets.UTF_8));
+        assertTrue(PendingFile.promote(file));
+        assertEquals("new", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertFalse(PendingFile.of(file).exists());
+    }
+}
@@ -0,0 +1,48 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+public class ResidueBufferTest extends TestCase
+{
+    public ResidueBufferTest(String arg) {
+        super(arg);
+    }
+
+    public void testNucleotides() throws Exception {
+        String residues = "ACGTNNACGTRYACGTACGTACGTACGTACGTACGTACGTACGTA";
+        ResidueBuffer buffer = ResidueBuffer.nucleotides(residues);
+        assertEquals(residues.length(), buffer.length());
+        assertEquals(residues, buffer.toString());
+        assertEquals(SequenceRegistry.md5checksum(residues), buffer.md5checksum());
+        StringBuilder builder = new StringBuilder(">");
+        buffer.appendTo(builder);
+        assertEquals(">" + residues, builder.toString());
+    }
+
+    public void testMostlyAmbiguous() throws Exception {
+        String residues = "NNNNacgtRYKMNNNN";
+        assertEquals(residues, ResidueBuffer.nucleotides(residues).toString());
+    }
+
+    public void testProtein() throws Exception {
+        String residues = "MSTNKVLE*";
+        ResidueBuffer buffer = ResidueBuffer.protein(residues);
+        assertEquals(residues, buffer.toString());
+        assertEquals(SequenceRegistry.md5checksum(residues), buffer.md5checksum());
+    }
+
+    public void testEmpty() throws Exception {
+        assertEquals("", ResidueBuffer.nucleotides("").toString());
+        assertEquals(SequenceRegistry.md5checksum(""), ResidueBuffer.protein("").md5checksum());
+    }
+}
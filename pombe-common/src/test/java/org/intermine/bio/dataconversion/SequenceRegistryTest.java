@@ -0,0 +1,93 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+public class SequenceRegistryTest extends TestCase
+{
+    private File file;
+
+    public SequenceRegistryTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("sequence-registry", ".txt");
+        file.delete();
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        String md5checksum = SequenceRegistry.md5checksum("MSTAA");
+        SequenceRegistry genes = new SequenceRegistry();
+        genes.setBuild("2026-10-16");
+        genes.load(file);
+        assertFalse(genes.isLoaded(md5checksum));
+        assertEquals("0_Sequence_1", genes.getRefId(md5checksum, () -> "0_Sequence_1"));
+        genes.save(file);
+
+        SequenceRegistry uniprot = new SequenceRegistry();
+        uniprot.setBuild("2026-10-16");
+        uniprot.load(file);
+        assertTrue(uniprot.isLoaded(md5checksum));
+        assertFalse(uniprot.isLoaded(SequenceRegistry.md5checksum("MSTAB")));
+        assertTrue(uniprot.getRefIds().isEmpty());
+    }
+
+    public void testOtherBuild() throws Exception {
+        SequenceRegistry genes = new SequenceRegistry();
+        genes.setBuild("2026-10-09");
+        genes.getRefId(SequenceRegistry.md5checksum("MSTAA"), () -> "0_Sequence_1");
+        genes.save(file);
+
+        SequenceRegistry uniprot = new SequenceRegistry();
+        uniprot.setBuild("2026-10-16");
+        try {
+            uniprot.load(file);
+            fail("Expected the file of another build to be refused");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("2026-10-09"));
+        }
+    }
+
+    public void testNoBuildInFile() throws Exception {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(SequenceRegistry.md5checksum("MSTAA") + "\n");
+        }
+        SequenceRegistry registry = new SequenceRegistry();
+        registry.setBuild("2026-10-16");
+        try {
+            registry.load(file);
+            fail("Expected a file without a build id to be refused");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testNoBuildSet() throws Exception {
+        SequenceRegistry registry = new SequenceRegistry();
+        try {
+            registry.load(file);
+            fail("Expected an error as no build id is set");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -89,7 +89,7 @@ public class PombeDiseasesConverter extends BioFileConverter
     public void process(Reader reader) throws ObjectStoreException, IOException {
         setDefaultDataset();
 
-        BufferedReader br = new BufferedReader(reader);
+        BufferedReader br = new BufferedReader(CompressedInput.reader(getCurrentFile(), reader));
         String line;
         // loop through entire file
         while ((line = br.readLine()) != null) {
@@ -0,0 +1,237 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory-mapped FASTA file with a samtools style index, so feature residues can be sliced out
+ * of the chromosome sequences by coordinates. Uses the .fai file next to the FASTA file if
+ * there is one, otherwise the index is built by reading the file once. As with samtools, every
+ * line of a sequence but the last has to be the same length. Soft-masked residues are returned
+ * in upper case, as in the genes file.
+ */
+public class FastaIndex
+{
+    private static final byte[] FORWARD = new byte[128];
+    private static final byte[] COMPLEMENT = new byte[128];
+    private Map<String, Record> records = new HashMap<>();
+
+    static {
+        for (int i = 0; i < FORWARD.length; i++) {
+            FORWARD[i] = (byte) Character.toUpperCase(i);
+            COMPLEMENT[i] = FORWARD[i];
+        }
+        String from = "ACGTRYKMBVDH";
+        String to = "TGCAYRMKVBHD";
+        for (int i = 0; i < from.length(); i++) {
+            COMPLEMENT[from.charAt(i)] = (byte) to.charAt(i);
+            COMPLEMENT[Character.toLowerCase(from.charAt(i))] = (byte) to.charAt(i);
+        }
+    }
+
+    /**
+     * @param fastaFile FASTA file of the chromosome sequences
+     * @throws IOException if the file or its index can't be read, or a sequence's lines aren't
+     * all the same length
+     */
+    public FastaIndex(File fastaFile) throws IOException {
+        File faiFile = new File(fastaFile.getPath() + ".fai");
+        if (faiFile.exists()) {
+            readFai(faiFile);
+        } else {
+            buildIndex(fastaFile);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(fastaFile, "r");
+                FileChannel channel = raf.getChannel()) {
+            for (Record record : records.values()) {
+                // each sequence is mapped on its own so files over 2GB are fine
+                record.buffer = channel.map(FileChannel.MapMode.READ_ONLY, record.offset,
+                        record.byteLength());
+            }
+        }
+    }
+
+    /**
+     * @param name sequence name, the FASTA header up to the first space
+     * @return true if the file has a sequence of that name
+     */
+    public boolean hasSequence(String name) {
+        return records.containsKey(name);
+    }
+
+    /**
+     * Residues between 1-based inclusive coordinates, read straight from the mapped file.
+     *
+     * @param name sequence name
+     * @param start first base, 1-based
+     * @param end last base, inclusive
+     * @param reverse if true return the reverse complement
+     * @return the residues
+     */
+    public ResidueBuffer getResidues(String name, int start, int end, boolean reverse) {
+        Record record = records.get(name);
+        if (record == null) {
+            throw new IllegalArgumentException("No sequence " + name + " in FASTA file");
+        }
+        if (start < 1 || end > record.length || end < start - 1) {
+            throw new IllegalArgumentException("Coordinates " + start + ".." + end
+                    + " outside " + name + " (length " + record.length + ")");
+        }
+        ResidueBuffer.NucleotideBuilder builder =
+            new ResidueBuffer.NucleotideBuilder(end - start + 1);
+        if (reverse) {
+            for (int i = end - 1; i >= start - 1; i--) {
+                builder.append(COMPLEMENT[record.get(i) & 0x7f]);
+            }
+        } else {
+            for (int i = start - 1; i < end; i++) {
+                builder.append(FORWARD[record.get(i) & 0x7f]);
+            }
+        }
+        return builder.build();
+    }
+
+    // name, length, offset, bases per line, bytes per line
+    private void readFai(File faiFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(faiFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] bits = line.split("\t");
+                if (bits.length < 5) {
+                    throw new IOException("Bad line in " + faiFile + ": " + line);
+                }
+                records.put(bits[0], new Record(Integer.parseInt(bits[1]),
+                        Long.parseLong(bits[2]), Integer.parseInt(bits[3]),
+                        Integer.parseInt(bits[4])));
+            }
+        }
+    }
+
+    // one pass over the file working out the same values a .fai file holds
+    private void buildIndex(File fastaFile) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(fastaFile))) {
+            long position = 0;
+            String name = null;
+            StringBuilder header = null;
+            long offset = 0;
+            int length = 0;
+            int lineBases = 0;
+            int lineBytes = 0;
+            int currentBases = 0;
+            int currentBytes = 0;
+            // seen a line shorter than the first, only allowed as the last line of a sequence
+            boolean shortLine = false;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (header != null) {
+                    if (b == '\n') {
+                        name = header.toString().trim().split("\\s+")[0];
+                        header = null;
+                        offset = position;
+                        length = 0;
+                        lineBases = 0;
+                        lineBytes = 0;
+                        shortLine = false;
+                    } else {
+                        header.append((char) b);
+                    }
+                } else if (b == '>') {
+                    if (name != null) {
+                        records.put(name, new Record(length, offset, lineBases, lineBytes));
+                    }
+                    header = new StringBuilder();
+                } else if (b == '\n') {
+                    currentBytes++;
+                    if (lineBases == 0 && currentBases > 0) {
+                        lineBases = currentBases;
+                        lineBytes = currentBytes;
+                    } else if (currentBases < lineBases || currentBases == 0) {
+                        shortLine = true;
+                    } else if (currentBases > lineBases || currentBytes != lineBytes) {
+                        throw raggedLines(fastaFile, name);
+                    }
+                    currentBases = 0;
+                    currentBytes = 0;
+                } else if (b == '\r') {
+                    currentBytes++;
+                } else {
+                    if (currentBases == 0 && shortLine) {
+                        throw raggedLines(fastaFile, name);
+                    }
+                    currentBases++;
+                    currentBytes++;
+                    length++;
+                }
+            }
+            if (name != null) {
+                if (lineBases > 0 && currentBases > lineBases) {
+                    throw raggedLines(fastaFile, name);
+                }
+                if (lineBases == 0) {
+                    // single line without a trailing newline
+                    lineBases = currentBases;
+                    lineBytes = currentBytes;
+                }
+                records.put(name, new Record(length, offset, lineBases, lineBytes));
+            }
+        }
+    }
+
+    // the coordinates of the bases can't be worked out from the line length
+    private static IOException raggedLines(File fastaFile, String name) {
+        return new IOException("Different line lengths in sequence " + name + " of "
+                + fastaFile + ", every line but the last has to be the same length");
+    }
+
+    private static class Record
+    {
+        private final int length;
+        private final long offset;
+        private final int lineBases;
+        private final int lineBytes;
+        private MappedByteBuffer buffer;
+
+        Record(int length, long offset, int lineBases, int lineBytes) {
+            this.length = length;
+            this.offset = offset;
+            this.lineBases = lineBases;
+            this.lineBytes = lineBytes;
+        }
+
+        private long byteLength() {
+            if (length == 0) {
+                return 0;
+            }
+            return (long) ((length - 1) / lineBases) * lineBytes + (length - 1) % lineBases + 1;
+        }
+
+        // absolute get, safe to call from several threads
+        private byte get(int base) {
+            return buffer.get((base / lineBases) * lineBytes + base % lineBases);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * Fingerprints of each gene's JSON subtree from the last load, used to load only the genes
+ * that were added or changed since then. Fingerprints are md5 checksums of the subtree with
+ * object fields in sorted order, so they don't depend on field order in the file. Each gene's
+ * neighbours are kept with its fingerprint, as they can change when the gene itself hasn't.
+ */
+public class GeneFingerprints
+{
+    private static final String ADDED = "added";
+    private static final String CHANGED = "changed";
+    private static final String REMOVED = "removed";
+
+    // systematic id -> fingerprint, from the last load
+    private Map<String, String> previous = new HashMap<>();
+    // systematic id -> fingerprint, this load
+    private Map<String, String> current = new LinkedHashMap<>();
+    // systematic id -> neighbours, from the last load and this load
+    private Map<String, String> previousNeighbours = new HashMap<>();
+    private Map<String, String> currentNeighbours = new HashMap<>();
+    private List<String> added = new ArrayList<>();
+    private List<String> changed = new ArrayList<>();
+
+    /**
+     * @param file fingerprints written by the last load, ignored if it doesn't exist
+     * @throws IOException if the file can't be read
+     */
+    public GeneFingerprints(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // neighbours are missing from files written before they were recorded
+                String[] bits = line.split("\t", -1);
+                if (bits.length != 2 && bits.length != 3) {
+                    throw new IOException("Bad line in " + file + ": " + line);
+                }
+                previous.put(bits[0], bits[1]);
+                if (bits.length == 3) {
+                    previousNeighbours.put(bits[0], bits[2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record a gene's fingerprint for this load.
+     *
+     * @param systematicId the gene's systematic id
+     * @param geneRoot the gene's subtree
+     * @return true if the gene is new or has changed since the last load
+     */
+    public boolean isChanged(String systematicId, JsonNode geneRoot) {
+        String fingerprint = fingerprint(geneRoot);
+        current.put(systematicId, fingerprint);
+        String previousFingerprint = previous.get(systematicId);
+        if (previousFingerprint == null) {
+            added.add(systematicId);
+            return true;
+        }
+        if (!previousFingerprint.equals(fingerprint)) {
+            changed.add(systematicId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record a gene's neighbours for this load, after its fingerprint.
+     *
+     * @param systematicId the gene's systematic id
+     * @param neighbours the gene's upstream and downstream genes and distances, as text
+     * @return true if they're different to the last load's or weren't recorded then
+     */
+    public boolean isNeighboursChanged(String systematicId, String neighbours) {
+        currentNeighbours.put(systematicId, neighbours);
+        return !neighbours.equals(previousNeighbours.get(systematicId));
+    }
+
+    /**
+     * @return number of genes seen in this load that hadn't changed
+     */
+    public int getUnchangedCount() {
+        return current.size() - added.size() - changed.size();
+    }
+
+    /**
+     * Write the fingerprints of this load, to compare the next load against.
+     *
+     * @param file file to write, replaced once the new file is complete
+     * @throws IOException if the file can't be written
+     */
+    public void save(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tmpFile))) {
+            for (Map.Entry<String, String> entry : current.entrySet()) {
+                String neighbours = currentNeighbours.get(entry.getKey());
+                writer.write(entry.getKey() + "\t" + entry.getValue()
+                        + "\t" + (neighbours == null ? "" : neighbours));
+                writer.newLine();
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Write the systematic ids of the genes added, changed and removed since the last load,
+     * one per line after the change type. Removed genes are in the last load but not in this
+     * one; they have to be deleted from the mine separately.
+     *
+     * @param file file to write
+     * @throws IOException if the file can't be written
+     */
+    public void writeManifest(File file) throws IOException {
+        List<String> removed = new ArrayList<>();
+        for (String systematicId : previous.keySet()) {
+            if (!current.containsKey(systematicId)) {
+                removed.add(systematicId);
+            }
+        }
+        Collections.sort(removed);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("# " + added.size() + " added, " + changed.size() + " changed, "
+                    + removed.size() + " removed, " + getUnchangedCount() + " unchanged");
+            writer.newLine();
+            writeIds(writer, ADDED, added);
+            writeIds(writer, CHANGED, changed);
+            writeIds(writer, REMOVED, removed);
+        }
+    }
+
+    private static void writeIds(BufferedWriter writer, String type, List<String> ids)
+        throws IOException {
+        for (String id : ids) {
+            writer.write(type + "\t" + id);
+            writer.newLine();
+        }
+    }
+
+    /**
+     * @param node a JSON subtree
+     * @return md5 of the subtree with object fields sorted by name
+     */
+    public static String fingerprint(JsonNode node) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        StringBuilder canonical = new StringBuilder();
+        appendCanonical(node, canonical);
+        return SequenceRegistry.toHex(digest.digest(
+                canonical.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // JSON text of the subtree, with no whitespace and object fields in sorted order
+    private static void appendCanonical(JsonNode node, StringBuilder canonical) {
+        if (node.isObject()) {
+            List<String> fieldNames = new ArrayList<>();
+            for (Iterator<String> it = node.fieldNames(); it.hasNext();) {
+                fieldNames.add(it.next());
+            }
+            Collections.sort(fieldNames);
+            canonical.append('{');
+            for (int i = 0; i < fieldNames.size(); i++) {
+                if (i > 0) {
+                    canonical.append(',');
+                }
+                canonical.append(TextNode.valueOf(fieldNames.get(i)).toString()).append(':');
+                appendCanonical(node.get(fieldNames.get(i)), canonical);
+            }
+            canonical.append('}');
+        } else if (node.isArray()) {
+            canonical.append('[');
+            for (int i = 0; i < node.size(); i++) {
+                if (i > 0) {
+                    canonical.append(',');
+                }
+                appendCanonical(node.get(i), canonical);
+            }
+            canonical.append(']');
+        } else if (node.isPojo() && ((POJONode) node).getPojo() instanceof ResidueBuffer) {
+            // residues packed while parsing, as their JSON text would be
+            canonical.append('"');
+            ((ResidueBuffer) ((POJONode) node).getPojo()).appendTo(canonical);
+            canonical.append('"');
+        } else {
+            canonical.append(node.toString());
+        }
+    }
+}
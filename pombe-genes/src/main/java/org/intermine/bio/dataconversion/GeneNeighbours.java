@@ -0,0 +1,125 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gene coordinates collected during the run, in primitive arrays, to work out each gene's
+ * upstream and downstream neighbour on its chromosome once all genes have been read.
+ * Neighbours are the previous and next gene ordered by start, upstream being the 5' side
+ * on the gene's own strand.
+ */
+public class GeneNeighbours
+{
+    private static final int INITIAL_SIZE = 1024;
+
+    private int size = 0;
+    private int[] starts = new int[INITIAL_SIZE];
+    private int[] ends = new int[INITIAL_SIZE];
+    private byte[] strands = new byte[INITIAL_SIZE];
+    private int[] previous;
+    private int[] next;
+    // per chromosome: start in the high 32 bits, gene index in the low 32 bits
+    private Map<String, SortKeys> chromosomes = new HashMap<>();
+
+    /**
+     * @param chromosome chromosome name
+     * @param start 1-based start
+     * @param end end, inclusive
+     * @param strand 1, -1 or 0 if unknown
+     * @return index of the gene, used by the other methods
+     */
+    public int add(String chromosome, int start, int end, int strand) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            strands = Arrays.copyOf(strands, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        strands[size] = (byte) strand;
+        chromosomes.computeIfAbsent(chromosome, key -> new SortKeys())
+            .add(((long) start << 32) | size);
+        previous = null;
+        return size++;
+    }
+
+    /**
+     * @return number of genes added
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param gene gene index
+     * @return index of the upstream gene, or -1 if it's the first gene on the chromosome
+     */
+    public int getUpstream(int gene) {
+        sort();
+        return (strands[gene] < 0) ? next[gene] : previous[gene];
+    }
+
+    /**
+     * @param gene gene index
+     * @return index of the downstream gene, or -1 if it's the last gene on the chromosome
+     */
+    public int getDownstream(int gene) {
+        sort();
+        return (strands[gene] < 0) ? previous[gene] : next[gene];
+    }
+
+    /**
+     * @param gene gene index
+     * @param neighbour index of one of its neighbours
+     * @return bases between the two genes, 0 if they overlap
+     */
+    public int getDistance(int gene, int neighbour) {
+        int gap = (starts[neighbour] > starts[gene])
+            ? starts[neighbour] - ends[gene] - 1
+            : starts[gene] - ends[neighbour] - 1;
+        return Math.max(0, gap);
+    }
+
+    // work out previous and next for all genes, once all genes have been added
+    private void sort() {
+        if (previous != null) {
+            return;
+        }
+        previous = new int[size];
+        next = new int[size];
+        for (SortKeys keys : chromosomes.values()) {
+            long[] sorted = Arrays.copyOf(keys.keys, keys.size);
+            Arrays.sort(sorted);
+            for (int i = 0; i < sorted.length; i++) {
+                int gene = (int) sorted[i];
+                previous[gene] = (i == 0) ? -1 : (int) sorted[i - 1];
+                next[gene] = (i == sorted.length - 1) ? -1 : (int) sorted[i + 1];
+            }
+        }
+    }
+
+    private static class SortKeys
+    {
+        private long[] keys = new long[INITIAL_SIZE];
+        private int size = 0;
+
+        private void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+    }
+}
@@ -11,19 +11,35 @@ package org.intermine.bio.dataconversion;
  */
 
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.POJONode;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Attribute;
 import org.intermine.xml.full.Item;
+import org.intermine.xml.full.Reference;
 
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.nio.CharBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -36,10 +52,48 @@ public class PombeGenesConverter extends BioFileConverter
     private static final String DEFAULT_DATA_SOURCE_NAME = "PomBase";
     private static final String DEFAULT_DATA_SET_NAME = "PomBase data set";
     private String datasetRefId;
+    // only used by the thread storing items, which creates every item in file order
     private Map<String, Item> organisms = new HashMap<>();
     private Map<String, Item> chromosomes = new HashMap<>();
+    // likewise, proteins by PomBase uniquename, which isn't an accession, and UniProt
+    // entries by accession
     private Map<String, Item> proteins = new HashMap<>();
+    private AccessionMap<Item> uniProtEntries = new AccessionMap<>();
+    private boolean streaming = false;
+    private int threads = 1;
+    private SequenceRegistry sequences = new SequenceRegistry();
+    private File sequenceRegistryFile = null;
+    private boolean sequenceRegistryLoaded = false;
+    private FastaIndex fasta = null;
+    private Set<String> missingFastaSequences = ConcurrentHashMap.newKeySet();
+    private boolean incremental = false;
+    private GeneFingerprints fingerprints = null;
+    private GeneNeighbours neighbours = null;
+    // by neighbour index: systematic id, then Gene item identifier and stored id, null if
+    // skipped as unchanged
+    private List<String> geneSystematicIds = new ArrayList<>();
+    private List<String> geneRefIds = new ArrayList<>();
+    private List<Integer> geneStoredIds = new ArrayList<>();
+    private ExecutorService executor = null;
+    private Deque<Future<PreparedGene>> pendingGenes = new ArrayDeque<>();
+    // genes in flight per worker thread before the writer waits for the oldest one
+    private static final int GENES_PER_THREAD = 16;
     private static final String LICENCE = "http://creativecommons.org/licenses/by/4.0/";
+    protected static final String PROP_FILE = "pombe-genes_config.properties";
+    private static final String SYNONYMS = "synonyms";
+    private static final String TRANSCRIPTS = "transcripts";
+    private static final String PARTS = "transcripts.parts";
+    private static final String PART_RESIDUES = "transcripts.parts.residues";
+    private static final String PROTEIN = "transcripts.protein";
+    private static final String PROTEIN_SEQUENCE = "transcripts.protein.sequence";
+    private static final String CDS_LOCATION = "transcripts.cds_location";
+    private static final Set<String> OPTIONAL_SUBTREES = new HashSet<>(Arrays.asList(SYNONYMS,
+            TRANSCRIPTS, PARTS, PART_RESIDUES, PROTEIN, PROTEIN_SEQUENCE, CDS_LOCATION));
+    private static final Set<String> PART_TYPES = new HashSet<>(Arrays.asList("exon",
+            "five_prime_utr", "three_prime_utr", "cds_intron"));
+    // null means load everything
+    private Set<String> subtrees = null;
+    private Set<String> featureTypes = null;
 
     /**
      * Constructor
@@ -49,6 +103,49 @@ public class PombeGenesConverter extends BioFileConverter
      */
     public PombeGenesConverter(ItemWriter writer, Model model) {
         super(writer, model);
+        readConfig();
+    }
+
+    // read config file that lists which optional subtrees and part types to load
+    private void readConfig() {
+        Properties props = new Properties();
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(PROP_FILE)) {
+            if (is == null) {
+                throw new RuntimeException("Problem loading properties '" + PROP_FILE + "'");
+            }
+            props.load(is);
+        } catch (IOException e) {
+            throw new RuntimeException("Problem loading properties '" + PROP_FILE + "'", e);
+        }
+        subtrees = parseConfigList(props, "subtrees", OPTIONAL_SUBTREES);
+        featureTypes = parseConfigList(props, "feature.types", PART_TYPES);
+        LOG.info("Loading subtrees " + (subtrees == null ? "ALL" : subtrees)
+                + ", part types " + (featureTypes == null ? "ALL" : featureTypes));
+    }
+
+    private Set<String> parseConfigList(Properties props, String key, Set<String> validValues) {
+        String value = props.getProperty(key);
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        Set<String> values = new HashSet<>();
+        for (String bit : StringUtils.split(value, ",")) {
+            String trimmed = bit.trim();
+            if (!validValues.contains(trimmed)) {
+                throw new IllegalArgumentException("Invalid " + key + " value in " + PROP_FILE
+                        + " was: " + trimmed + ", expected one of " + validValues);
+            }
+            values.add(trimmed);
+        }
+        return values;
+    }
+
+    private boolean isLoaded(String path) {
+        return subtrees == null || !OPTIONAL_SUBTREES.contains(path) || subtrees.contains(path);
+    }
+
+    private boolean isLoadedPart(String featureType) {
+        return featureTypes == null || featureTypes.contains(featureType);
     }
 
     /**
@@ -76,6 +173,110 @@ public class PombeGenesConverter extends BioFileConverter
         this.licence = licence;
     }
 
+    /**
+     * Toggle whether or not to stream the genes file one gene at a time instead of reading
+     * the whole JSON tree into memory first. Residues are then packed as they're read, and only
+     * become a String when their Sequence item is stored.
+     *
+     * @param streaming whether or not to stream the genes file (true/false)
+     */
+    public void setStreaming(String streaming) {
+        if ("true".equalsIgnoreCase(streaming)) {
+            this.streaming = true;
+        } else {
+            this.streaming = false;
+        }
+    }
+
+    /**
+     * Set the number of threads used to convert genes. The threads pack and checksum the
+     * residues of each gene, the items are still created and stored by a single thread in the
+     * order the genes appear in the file, so the output is the same for any number of threads.
+     *
+     * @param threads number of worker threads, 1 (the default) converts genes in turn
+     */
+    public void setThreads(String threads) {
+        this.threads = Math.max(1, Integer.parseInt(threads.trim()));
+    }
+
+    /**
+     * Set a file used to share sequence checksums with other sources. Sequences already
+     * created by an earlier source are created without residues and merged on md5checksum.
+     *
+     * The file is read when processing starts, see setSequenceRegistryBuild().
+     *
+     * @param fileName path of the checksum file, created if it doesn't exist
+     */
+    public void setSequenceRegistry(String fileName) {
+        sequenceRegistryFile = new File(fileName);
+    }
+
+    /**
+     * Set the id of this build, needed with setSequenceRegistry(). Every source sharing the
+     * file has to be given the same id, eg. the date the build started. A file written for
+     * another build is refused, rather than taking its sequences as already stored.
+     *
+     * @param build the build id
+     */
+    public void setSequenceRegistryBuild(String build) {
+        sequences.setBuild(build.trim());
+    }
+
+    /**
+     * Take part residues from this FASTA file of chromosome sequences instead of the genes
+     * file, sliced out using each part's location. Any residues in the genes file are
+     * skipped. A .fai index next to the FASTA file is used if present.
+     *
+     * @param fileName path of the FASTA file
+     * @throws IOException if the file can't be read or indexed
+     */
+    public void setFastaFile(String fileName) throws IOException {
+        fasta = new FastaIndex(new File(fileName));
+    }
+
+    /**
+     * Toggle incremental loading. Only genes added or changed since the last incremental
+     * load are converted, compared using fingerprints saved next to the genes file. A
+     * .manifest file next to the genes file lists the added, changed and removed genes.
+     *
+     * Both are written as .pending files, promote them once the source has been integrated:
+     * <pre>
+     *   ./gradlew :pombe-common:promotePending -Dpending.files=GENES.fingerprints,GENES.manifest
+     * </pre>
+     * Until then the next load is compared against the last one that was promoted, so a
+     * failed load is converted again.
+     *
+     * Changed genes are loaded whole and merged by the integration keys of the gene and its
+     * parts, name the source pombe-genes-incremental in project.xml so that the keys in
+     * pombe-genes-incremental_keys.properties are used. A full load keeps the fewer keys of
+     * pombe-genes_keys.properties. Parts, synonyms and other values dropped from a changed
+     * gene are left in the mine, like removed genes they have to be deleted separately.
+     *
+     * Residues from a FASTA file aren't part of the fingerprints, remove the .fingerprints
+     * file to load everything again when the genome sequence changes.
+     *
+     * @param incremental whether or not to only load changed genes (true/false)
+     */
+    public void setIncremental(String incremental) {
+        if ("true".equalsIgnoreCase(incremental)) {
+            this.incremental = true;
+        } else {
+            this.incremental = false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws Exception {
+        // not if nothing was processed, the file would lose the earlier sources' checksums
+        if (sequenceRegistryLoaded) {
+            sequences.save(sequenceRegistryFile);
+        }
+        super.close();
+    }
+
     private void storeDefaultDataset() throws ObjectStoreException {
         if (dataSetTitle == null) {
             dataSetTitle = DEFAULT_DATA_SET_NAME;
@@ -101,16 +302,306 @@ public class PombeGenesConverter extends BioFileConverter
             LOG.info("READING " + fileName);
             LOG.info("======================================");
 
-            JsonNode root = new ObjectMapper().readTree(reader);
-            Iterator<JsonNode> it = root.elements();
             storeDefaultDataset();
-            while (it.hasNext()) {
-                storeGene(it.next());
+            if (sequenceRegistryFile != null && !sequenceRegistryLoaded) {
+                sequences.load(sequenceRegistryFile);
+                sequenceRegistryLoaded = true;
+            }
+            if (threads > 1) {
+                executor = Executors.newFixedThreadPool(threads);
+            }
+            Reader input = CompressedInput.reader(file, reader);
+            // same fingerprints whether or not the genes file is compressed
+            String basePath = CompressedInput.stripSuffix(file.getPath());
+            File fingerprintFile = new File(basePath + ".fingerprints");
+            if (incremental) {
+                if (PendingFile.of(fingerprintFile).exists()) {
+                    LOG.warn(PendingFile.of(fingerprintFile) + " was never promoted, taking the"
+                            + " last load as failed and comparing against the load before it");
+                }
+                fingerprints = new GeneFingerprints(fingerprintFile);
+            }
+            neighbours = new GeneNeighbours();
+            try {
+                if (streaming) {
+                    streamGenes(input);
+                } else {
+                    JsonNode root = new ObjectMapper().readTree(input);
+                    Iterator<JsonNode> it = root.elements();
+                    while (it.hasNext()) {
+                        storeGene(it.next());
+                    }
+                }
+                while (!pendingGenes.isEmpty()) {
+                    storeGeneItems(createGene(waitFor(pendingGenes.removeFirst())));
+                }
+                storeNeighbours();
+                if (fingerprints != null) {
+                    // only compared against once the load has been integrated and the
+                    // pending file promoted
+                    fingerprints.save(PendingFile.of(fingerprintFile));
+                    fingerprints.writeManifest(PendingFile.of(new File(basePath + ".manifest")));
+                    LOG.info("Skipped " + fingerprints.getUnchangedCount() + " unchanged genes");
+                }
+            } finally {
+                if (executor != null) {
+                    executor.shutdownNow();
+                    executor = null;
+                }
+                pendingGenes.clear();
+                fingerprints = null;
+                neighbours = null;
+                geneSystematicIds.clear();
+                geneRefIds.clear();
+                geneStoredIds.clear();
+            }
+        }
+    }
+
+    // in parallel mode hand the gene's residues to a worker, then create and store the items
+    // of prepared genes in file order
+    private void storeGene(JsonNode geneRoot) throws ObjectStoreException {
+        // unchanged genes still count as neighbours
+        int neighbourIndex = addNeighbour(geneRoot);
+        if (fingerprints != null
+                && !fingerprints.isChanged(geneRoot.path("systematic_id").asText(), geneRoot)) {
+            return;
+        }
+        if (executor == null) {
+            storeGeneItems(createGene(prepareGene(geneRoot, neighbourIndex)));
+            return;
+        }
+        pendingGenes.addLast(executor.submit(() -> prepareGene(geneRoot, neighbourIndex)));
+        while (pendingGenes.size() >= threads * GENES_PER_THREAD) {
+            storeGeneItems(createGene(waitFor(pendingGenes.removeFirst())));
+        }
+    }
+
+    private PreparedGene waitFor(Future<PreparedGene> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while converting genes", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Error converting gene", e.getCause());
+        }
+    }
+
+    private void storeGeneItems(GeneItems geneItems) throws ObjectStoreException {
+        for (int i = 0; i < geneItems.items.size(); i++) {
+            Item item = geneItems.items.get(i);
+            ResidueBuffer residues = geneItems.residues.get(i);
+            if (residues != null) {
+                item.setAttribute("residues", residues.toString());
+            }
+            Integer storedId = store(item);
+            if (item == geneItems.gene && geneItems.neighbourIndex >= 0) {
+                geneRefIds.set(geneItems.neighbourIndex, item.getIdentifier());
+                geneStoredIds.set(geneItems.neighbourIndex, storedId);
+            }
+        }
+    }
+
+    // -1 if the gene has no location
+    private int addNeighbour(JsonNode geneRoot) {
+        JsonNode location = geneRoot.path("location");
+        int start = location.path("start_pos").asInt(0);
+        int end = location.path("end_pos").asInt(0);
+        if (start <= 0 || end < start) {
+            return -1;
+        }
+        int strand = 0;
+        if ("forward".equals(location.path("strand").asText())) {
+            strand = 1;
+        } else if ("reverse".equals(location.path("strand").asText())) {
+            strand = -1;
+        }
+        geneSystematicIds.add(geneRoot.path("systematic_id").asText());
+        geneRefIds.add(null);
+        geneStoredIds.add(null);
+        return neighbours.add(location.path("chromosome_name").asText(), start, end, strand);
+    }
+
+    // once all genes are stored, set upstream and downstream neighbours and distances. Genes
+    // skipped as unchanged whose neighbours have changed since the last load get a Gene item
+    // with just these fields, merged on primaryIdentifier. A neighbour that has gone, at the
+    // new end of a chromosome, is left in the mine like the removed gene it points to
+    private void storeNeighbours() throws ObjectStoreException {
+        Map<Integer, Item> unchangedGenes = new LinkedHashMap<>();
+        for (int gene = 0; gene < neighbours.size(); gene++) {
+            int upstream = neighbours.getUpstream(gene);
+            int downstream = neighbours.getDownstream(gene);
+            if (fingerprints != null) {
+                boolean changed = fingerprints.isNeighboursChanged(geneSystematicIds.get(gene),
+                        describeNeighbour(gene, upstream) + ","
+                        + describeNeighbour(gene, downstream));
+                if (!changed && geneStoredIds.get(gene) == null) {
+                    continue;
+                }
+            }
+            if (upstream >= 0) {
+                storeNeighbour(gene, upstream, "upstream", unchangedGenes);
+            }
+            if (downstream >= 0) {
+                storeNeighbour(gene, downstream, "downstream", unchangedGenes);
+            }
+        }
+        for (Item gene : unchangedGenes.values()) {
+            store(gene);
+        }
+    }
+
+    // systematic id and distance, empty at the end of a chromosome
+    private String describeNeighbour(int gene, int neighbour) {
+        if (neighbour < 0) {
+            return "";
+        }
+        return geneSystematicIds.get(neighbour) + ":" + neighbours.getDistance(gene, neighbour);
+    }
+
+    private void storeNeighbour(int gene, int neighbour, String side,
+            Map<Integer, Item> unchangedGenes) throws ObjectStoreException {
+        String neighbourRefId = getNeighbourRefId(neighbour, unchangedGenes);
+        String distance = String.valueOf(neighbours.getDistance(gene, neighbour));
+        Integer storedId = geneStoredIds.get(gene);
+        if (storedId != null) {
+            store(new Reference(side + "Gene", neighbourRefId), storedId);
+            store(new Attribute(side + "IntergenicDistance", distance), storedId);
+        } else {
+            Item item = getUnchangedGene(gene, unchangedGenes);
+            item.setReference(side + "Gene", neighbourRefId);
+            item.setAttribute(side + "IntergenicDistance", distance);
+        }
+    }
+
+    private String getNeighbourRefId(int gene, Map<Integer, Item> unchangedGenes) {
+        if (geneRefIds.get(gene) != null) {
+            return geneRefIds.get(gene);
+        }
+        return getUnchangedGene(gene, unchangedGenes).getIdentifier();
+    }
+
+    private Item getUnchangedGene(int gene, Map<Integer, Item> unchangedGenes) {
+        return unchangedGenes.computeIfAbsent(gene, key -> {
+            Item item = createItem("Gene");
+            item.setAttribute("primaryIdentifier", geneSystematicIds.get(gene));
+            return item;
+        });
+    }
+
+    // the genes file is either an object keyed by systematic id or an array of genes; read
+    // one top-level gene at a time so only the current gene's subtree is held in memory
+    private void streamGenes(Reader reader) throws IOException, ObjectStoreException {
+        ObjectMapper mapper = new ObjectMapper();
+        try (JsonParser parser = mapper.getFactory().createParser(reader)) {
+            JsonToken rootToken = parser.nextToken();
+            if (rootToken != JsonToken.START_OBJECT && rootToken != JsonToken.START_ARRAY) {
+                throw new RuntimeException("Expected a JSON object or array of genes in "
+                        + getCurrentFile().getName() + " but found " + rootToken);
+            }
+            JsonToken endToken = (rootToken == JsonToken.START_OBJECT)
+                    ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+            JsonToken token;
+            while ((token = parser.nextToken()) != endToken && token != null) {
+                if (token == JsonToken.FIELD_NAME) {
+                    // systematic id, also present inside the gene itself
+                    token = parser.nextToken();
+                }
+                if (token == JsonToken.START_OBJECT) {
+                    storeGene(readProjected(mapper, parser, ""));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    // build the subtree at the current token, skipping any field or transcript part the
+    // config doesn't load without building it
+    private JsonNode readProjected(ObjectMapper mapper, JsonParser parser, String path)
+        throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            ObjectNode node = JsonNodeFactory.instance.objectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                String fieldPath = path.isEmpty() ? fieldName : path + "." + fieldName;
+                parser.nextToken();
+                if (!isLoaded(fieldPath) || (fasta != null && PART_RESIDUES.equals(fieldPath))) {
+                    parser.skipChildren();
+                } else if (parser.currentToken() == JsonToken.VALUE_STRING
+                        && (PART_RESIDUES.equals(fieldPath)
+                        || PROTEIN_SEQUENCE.equals(fieldPath))) {
+                    // packed from the parser's buffer, so the residues are never a String in
+                    // the tree waiting for a worker
+                    CharBuffer text = CharBuffer.wrap(parser.getTextCharacters(),
+                            parser.getTextOffset(), parser.getTextLength());
+                    node.putPOJO(fieldName, PART_RESIDUES.equals(fieldPath)
+                            ? ResidueBuffer.nucleotides(text) : ResidueBuffer.protein(text));
+                } else {
+                    node.set(fieldName, readProjected(mapper, parser, fieldPath));
+                }
+            }
+            return node;
+        } else if (token == JsonToken.START_ARRAY) {
+            ArrayNode node = JsonNodeFactory.instance.arrayNode();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                JsonNode element = readProjected(mapper, parser, path);
+                if (!PARTS.equals(path) || isLoadedPart(element.path("feature_type").asText())) {
+                    node.add(element);
+                }
+            }
+            return node;
+        }
+        return mapper.readTree(parser);
+    }
+
+    // the slow part of converting a gene, safe to run on a worker as it creates no items
+    private PreparedGene prepareGene(JsonNode geneRoot, int neighbourIndex) {
+        PreparedGene prepared = new PreparedGene(geneRoot, neighbourIndex);
+        if (!isLoaded(TRANSCRIPTS)) {
+            return prepared;
+        }
+        for (JsonNode transcriptNode : geneRoot.path("transcripts")) {
+            if (isLoaded(PARTS) && isLoaded(PART_RESIDUES)) {
+                for (JsonNode partNode : transcriptNode.path("parts")) {
+                    String featureType = partNode.path("feature_type").asText();
+                    if (!PART_TYPES.contains(featureType) || !isLoadedPart(featureType)) {
+                        continue;
+                    }
+                    if (fasta != null) {
+                        prepared.add(partNode, getFastaResidues(partNode.path("location")));
+                    } else {
+                        prepared.add(partNode, getResidues(partNode.path("residues"), true));
+                    }
+                }
+            }
+            if (isLoaded(PROTEIN) && isLoaded(PROTEIN_SEQUENCE)) {
+                JsonNode proteinNode = transcriptNode.path("protein");
+                prepared.add(proteinNode, getResidues(proteinNode.path("sequence"), false));
             }
         }
+        return prepared;
     }
 
-    private void storeGene(JsonNode geneRoot) {
+    // residues packed by readProjected(), or packed from the text of a tree read whole
+    private static ResidueBuffer getResidues(JsonNode node, boolean nucleotides) {
+        if (node.isPojo() && ((POJONode) node).getPojo() instanceof ResidueBuffer) {
+            return (ResidueBuffer) ((POJONode) node).getPojo();
+        }
+        String text = node.asText();
+        return nucleotides ? ResidueBuffer.nucleotides(text) : ResidueBuffer.protein(text);
+    }
+
+    private GeneItems createGene(PreparedGene prepared) {
+        JsonNode geneRoot = prepared.geneRoot;
+        GeneItems geneItems = new GeneItems();
+        geneItems.neighbourIndex = prepared.neighbourIndex;
+        geneItems.packedResidues = prepared.residues;
         Item gene = createItem("Gene");
         gene.setAttributeIfNotNull("primaryIdentifier", geneRoot.path("systematic_id").asText());
         String name = geneRoot.path("name").asText();
@@ -122,49 +613,44 @@ public class PombeGenesConverter extends BioFileConverter
 
         //create organism
         String taxonId = geneRoot.path("taxonid").asText();
-        Item organism = storeOrganism(taxonId);
+        Item organism = storeOrganism(taxonId, geneItems);
         setOrganism(gene, organism);
         //set synonyms
-        storeSynonyms(geneRoot.path("synonyms"), gene);
+        if (isLoaded(SYNONYMS)) {
+            storeSynonyms(geneRoot.path("synonyms"), gene, geneItems);
+        }
         //set chromosome and chromosome location
         JsonNode location = geneRoot.path("location");
-        Item chromosome = storeChromosome(location, gene, organism);
-        storeLocation(location, gene, chromosome);
+        Item chromosome = storeChromosome(location, gene, organism, geneItems);
+        storeLocation(location, gene, chromosome, geneItems);
         //set transcripts
-        storeTranscripts(geneRoot.path("transcripts"), gene, organism);
+        if (isLoaded(TRANSCRIPTS)) {
+            storeTranscripts(geneRoot.path("transcripts"), gene, organism, geneItems);
+        }
         //set protein
         String uniprotId = geneRoot.path("uniprot_identifier").asText();
         if (!StringUtils.isEmpty(uniprotId)) {
-            storeUniProtEntry(uniprotId, gene, organism);
-        }
-        try {
-            store(gene);
-        } catch (ObjectStoreException ex) {
-            throw new RuntimeException("Error storing gene ", ex);
+            storeUniProtEntry(uniprotId, gene, organism, geneItems);
         }
+        geneItems.add(gene);
+        geneItems.gene = gene;
+        return geneItems;
     }
 
     private void setOrganism(Item bioEntity, Item organism) {
         bioEntity.setReference("organism", organism);
     }
 
-    private Item storeOrganism(String taxonId) {
-        if (organisms.containsKey(taxonId)) {
-            return organisms.get(taxonId);
-        } else {
+    private Item storeOrganism(String taxonId, GeneItems geneItems) {
+        return organisms.computeIfAbsent(taxonId, key -> {
             Item organism = createItem("Organism");
             organism.setAttributeIfNotNull("taxonId", taxonId);
-            try {
-                store(organism);
-            } catch (ObjectStoreException ex) {
-                throw new RuntimeException("Error storing organism ", ex);
-            }
-            organisms.put(taxonId, organism);
+            geneItems.add(organism);
             return organism;
-        }
+        });
     }
 
-    private void storeSynonyms(JsonNode synonyms, Item bioEntity) {
+    private void storeSynonyms(JsonNode synonyms, Item bioEntity, GeneItems geneItems) {
         List<String> synonymIds = new ArrayList<>();
         for (JsonNode synonymNode : synonyms) {
             Item synonym = createItem("Synonym");
@@ -172,35 +658,26 @@ public class PombeGenesConverter extends BioFileConverter
             synonym.setAttributeIfNotNull("type", synonymNode.path("type").asText());
             synonym.setReference("subject", bioEntity);
             synonym.addToCollection("dataSets", datasetRefId);
-            try {
-                store(synonym);
-                synonymIds.add(synonym.getIdentifier());
-            } catch (ObjectStoreException ex) {
-                throw new RuntimeException("Error storing synonym ", ex);
-            }
+            geneItems.add(synonym);
+            synonymIds.add(synonym.getIdentifier());
         }
         bioEntity.setCollection("synonyms", synonymIds);
     }
 
-    private Item storeChromosome(JsonNode location, Item bioEntity, Item organism) {
+    private Item storeChromosome(JsonNode location, Item bioEntity, Item organism,
+            GeneItems geneItems) {
         Item chromosome = null;
         if (location != null) {
             String primaryIdentifier = location.path("chromosome_name").asText();
-            if (chromosomes.containsKey(primaryIdentifier)) {
-                chromosome = chromosomes.get(primaryIdentifier);
-            } else {
-                chromosome = createItem("Chromosome");
-                chromosome.setAttributeIfNotNull("primaryIdentifier",
+            chromosome = chromosomes.computeIfAbsent(primaryIdentifier, key -> {
+                Item item = createItem("Chromosome");
+                item.setAttributeIfNotNull("primaryIdentifier",
                         generateChromosomeIdentifier(primaryIdentifier));
-                chromosome.addToCollection("dataSets", datasetRefId);
-                setOrganism(chromosome, organism);
-                try {
-                    store(chromosome);
-                } catch (ObjectStoreException ex) {
-                    throw new RuntimeException("Error storing Item chromosome ", ex);
-                }
-                chromosomes.put(primaryIdentifier, chromosome);
-            }
+                item.addToCollection("dataSets", datasetRefId);
+                setOrganism(item, organism);
+                geneItems.add(item);
+                return item;
+            });
             bioEntity.setReference("chromosome", chromosome);
         }
         return chromosome;
@@ -220,12 +697,20 @@ public class PombeGenesConverter extends BioFileConverter
         }
     }
 
-    private void storeLocation(JsonNode locationNode, Item bioEntity, Item chromosome) {
+    private void storeLocation(JsonNode locationNode, Item bioEntity, Item chromosome,
+            GeneItems geneItems) {
         if (locationNode != null) {
             Item location = createItem("Location");
             location.setAttributeIfNotNull("start", locationNode.path("start_pos").asText());
             location.setAttributeIfNotNull("end", locationNode.path("end_pos").asText());
             location.setAttributeIfNotNull("phase", locationNode.path("phase").asText());
+            // UCSC bin for region queries, bins use 0-based half-open coordinates
+            int start = locationNode.path("start_pos").asInt(0);
+            int end = locationNode.path("end_pos").asInt(0);
+            if (start > 0 && end >= start) {
+                location.setAttribute("bin",
+                        String.valueOf(LocationBins.binFromRange(start - 1, end)));
+            }
             location.addToCollection("dataSets", datasetRefId);
             String strandValue = locationNode.path("strand").asText();
             switch (strandValue) {
@@ -241,35 +726,26 @@ public class PombeGenesConverter extends BioFileConverter
             location.setReference("feature", bioEntity);
             location.setReference("locatedOn", chromosome);
             bioEntity.setReference("chromosomeLocation", location);
-            try {
-                store(location);
-            } catch (ObjectStoreException ex) {
-                throw new RuntimeException("Error storing location ", ex);
-            }
+            geneItems.add(location);
         }
     }
 
-    private void storeUniProtEntry(String uniprotId, Item gene, Item organism) {
-        Item protein;
-        if (proteins.containsKey(uniprotId)) {
-            protein = proteins.get(uniprotId);
-        } else {
-            protein = createItem("UniProtEntry");
-            protein.setAttributeIfNotNull("primaryAccession", uniprotId);
-            protein.setReference("gene", gene);
-            protein.addToCollection("dataSets", datasetRefId);
-            setOrganism(protein, organism);
-            try {
-                store(protein);
-            } catch (ObjectStoreException ex) {
-                throw new RuntimeException("Error storing protein ", ex);
-            }
-            proteins.put(uniprotId, protein);
-        }
+    private void storeUniProtEntry(String uniprotId, Item gene, Item organism,
+            GeneItems geneItems) {
+        Item protein = uniProtEntries.computeIfAbsent(uniprotId, key -> {
+            Item item = createItem("UniProtEntry");
+            item.setAttributeIfNotNull("primaryAccession", uniprotId);
+            item.setReference("gene", gene);
+            item.addToCollection("dataSets", datasetRefId);
+            setOrganism(item, organism);
+            geneItems.add(item);
+            return item;
+        });
         gene.setReference("uniProtEntry", protein);
     }
 
-    private void storeTranscripts(JsonNode transcripts, Item gene, Item organism) {
+    private void storeTranscripts(JsonNode transcripts, Item gene, Item organism,
+            GeneItems geneItems) {
         List<String> transcriptIds = new ArrayList<>();
         for (JsonNode transcriptNode : transcripts) {
             Item transcript = createItem("Transcript");
@@ -278,29 +754,35 @@ public class PombeGenesConverter extends BioFileConverter
             transcript.addToCollection("dataSets", datasetRefId);
             setOrganism(transcript, organism);
             //set part
-            storeParts(transcriptNode.path("parts"), gene, organism);
+            if (isLoaded(PARTS)) {
+                storeParts(transcriptNode.path("parts"), gene, organism, geneItems);
+            }
             //set chromosome and chromosome location
             JsonNode location = transcriptNode.path("location");
-            Item chromosome = storeChromosome(location, gene, organism);
-            storeLocation(location, transcript, chromosome);
-            storeProtein(transcriptNode.path("protein"), transcript, organism);
-            storeCDS(transcriptNode.path("cds_location"), transcript, organism);
-            transcript.setReference("gene", gene);
-            try {
-                store(transcript);
-                transcriptIds.add(transcript.getIdentifier());
-            } catch (ObjectStoreException ex) {
-                throw new RuntimeException("Error storing transcript ", ex);
+            Item chromosome = storeChromosome(location, gene, organism, geneItems);
+            storeLocation(location, transcript, chromosome, geneItems);
+            if (isLoaded(PROTEIN)) {
+                storeProtein(transcriptNode.path("protein"), transcript, organism,
+                        geneItems);
+            }
+            if (isLoaded(CDS_LOCATION)) {
+                storeCDS(transcriptNode.path("cds_location"), transcript, organism, geneItems);
             }
+            transcript.setReference("gene", gene);
+            geneItems.add(transcript);
+            transcriptIds.add(transcript.getIdentifier());
         }
         gene.setCollection("transcripts", transcriptIds);
     }
 
-    private void storeParts(JsonNode parts, Item gene, Item organism) {
+    private void storeParts(JsonNode parts, Item gene, Item organism, GeneItems geneItems) {
         if (parts != null) {
             List<String> featureIds = new ArrayList<>();
             for (JsonNode partNode : parts) {
                 String featureType = partNode.path("feature_type").asText();
+                if (!isLoadedPart(featureType)) {
+                    continue;
+                }
                 Item feature = null;
                 String collectionName = null;
                 switch (featureType) {
@@ -327,77 +809,158 @@ public class PombeGenesConverter extends BioFileConverter
                     setOrganism(feature, organism);
                     //set chromosome and chromosome location
                     JsonNode location = partNode.path("location");
-                    Item chromosome = storeChromosome(location, gene, organism);
-                    storeLocation(location, feature, chromosome);
-                    storeSequence(partNode.path("residues").asText(), feature);
+                    Item chromosome = storeChromosome(location, gene, organism, geneItems);
+                    storeLocation(location, feature, chromosome, geneItems);
+                    if (isLoaded(PART_RESIDUES)) {
+                        storeSequence(geneItems.packedResidues.get(partNode), feature,
+                                geneItems);
+                    }
                     if (!featureType.equals("cds_intron")) {
                         feature.setReference("gene", gene);
                     } //otherwise should be genes?
-                    try {
-                        store(feature);
-                        featureIds.add(feature.getIdentifier());
-                    } catch (ObjectStoreException ex) {
-                        throw new RuntimeException("Error storing feature ", ex);
-                    }
+                    geneItems.add(feature);
+                    featureIds.add(feature.getIdentifier());
                     gene.setCollection(collectionName, featureIds);
                 }
             }
         }
     }
 
-    private void storeProtein(JsonNode proteinNode, Item bioEntity, Item organism) {
+    private void storeProtein(JsonNode proteinNode, Item bioEntity, Item organism,
+            GeneItems geneItems) {
         String primaryAccession = proteinNode.path("uniquename").asText();
-        Item protein;
-        if (proteins.containsKey(primaryAccession)) {
-            protein = proteins.get(primaryAccession);
-        } else {
-            protein = createItem("Protein");
+        proteins.computeIfAbsent(primaryAccession, key -> {
+            Item protein = createItem("Protein");
             protein.setAttributeIfNotNull("primaryAccession", primaryAccession);
             protein.setAttributeIfNotNull("name", proteinNode.path("product").asText());
             protein.setAttributeIfNotNull("molecularWeight", proteinNode.path("molecular_weight").asText());
             protein.addToCollection("dataSets", datasetRefId);
-            storeSequence(proteinNode.path("sequence").asText(), protein);
-            setOrganism(protein, organism);
-            try {
-                store(protein);
-            } catch (ObjectStoreException ex) {
-                throw new RuntimeException("Error storing protein ", ex);
+            if (isLoaded(PROTEIN_SEQUENCE)) {
+                storeSequence(geneItems.packedResidues.get(proteinNode), protein, geneItems);
             }
+            setOrganism(protein, organism);
+            geneItems.add(protein);
             bioEntity.setReference("protein", protein);
-        }
-        proteins.put(primaryAccession, protein);
+            return protein;
+        });
     }
 
-    private void storeSequence(String sequence, Item sequenceFeature) {
-        if (!sequence.isEmpty()) {
-            Item sequenceItem = createItem("Sequence");
-            sequenceItem.setAttribute("residues", sequence);
-            sequenceFeature.setReference("sequence", sequenceItem);
-            try {
-                store(sequenceItem);
-            } catch (ObjectStoreException ex) {
-                throw new RuntimeException("Error storing sequence ", ex);
+    // slice the residues of a part out of the FASTA file, reverse complemented if needed
+    private ResidueBuffer getFastaResidues(JsonNode locationNode) {
+        String chromosomeName = locationNode.path("chromosome_name").asText();
+        String name = chromosomeName;
+        if (!fasta.hasSequence(name)) {
+            name = generateChromosomeIdentifier(chromosomeName);
+            if (!fasta.hasSequence(name)) {
+                if (missingFastaSequences.add(chromosomeName)) {
+                    LOG.warn("No sequence for " + chromosomeName + " in FASTA file, parts on it"
+                            + " will have no residues");
+                }
+                return null;
             }
         }
+        int start = locationNode.path("start_pos").asInt();
+        int end = locationNode.path("end_pos").asInt();
+        boolean reverse = "reverse".equals(locationNode.path("strand").asText());
+        return fasta.getResidues(name, start, end, reverse);
+    }
+
+    // identical residues share one Sequence item, see SequenceRegistry
+    private void storeSequence(PackedResidues packed, Item sequenceFeature,
+            GeneItems geneItems) {
+        if (packed != null) {
+            ResidueBuffer residues = packed.residues;
+            String md5checksum = packed.md5checksum;
+            String sequenceRefId = sequences.getRefId(md5checksum, () -> {
+                Item sequenceItem = createItem("Sequence");
+                sequenceItem.setAttribute("length", String.valueOf(residues.length()));
+                sequenceItem.setAttribute("md5checksum", md5checksum);
+                if (sequences.isLoaded(md5checksum)) {
+                    geneItems.add(sequenceItem);
+                } else {
+                    geneItems.add(sequenceItem, residues);
+                }
+                return sequenceItem.getIdentifier();
+            });
+            sequenceFeature.setReference("sequence", sequenceRefId);
+        }
     }
 
-    private void storeCDS(JsonNode cdsNode, Item bioEntity, Item organism) {
+    private void storeCDS(JsonNode cdsNode, Item bioEntity, Item organism,
+            GeneItems geneItems) {
         Item cds = createItem("CDS");
         cds.setAttribute("primaryIdentifier", createCDSIdentifier(bioEntity));
         cds.setReference("transcript", bioEntity);
         cds.addToCollection("dataSets", datasetRefId);
         setOrganism(cds, organism);
-        Item chromosome = storeChromosome(cdsNode, cds, organism);
-        storeLocation(cdsNode, cds, chromosome);
-        try {
-            store(cds);
-        } catch (ObjectStoreException ex) {
-            throw new RuntimeException("Error storing cds ", ex);
-        }
+        Item chromosome = storeChromosome(cdsNode, cds, organism, geneItems);
+        storeLocation(cdsNode, cds, chromosome, geneItems);
+        geneItems.add(cds);
     }
 
     private String createCDSIdentifier(Item bioEntity) {
         String primaryIdentifier = bioEntity.getAttribute("primaryIdentifier").getValue();
         return primaryIdentifier.concat("_CDS");
     }
-}
\ No newline at end of file
+
+    /**
+     * Items created for one gene, in the order they are to be stored. Sequence residues are
+     * held packed until the item is stored.
+     */
+    private static class GeneItems
+    {
+        private List<Item> items = new ArrayList<>();
+        private List<ResidueBuffer> residues = new ArrayList<>();
+        private Item gene;
+        private int neighbourIndex = -1;
+        // part or protein node -> its residues, packed by prepareGene()
+        private Map<JsonNode, PackedResidues> packedResidues;
+
+        private void add(Item item) {
+            add(item, null);
+        }
+
+        private void add(Item item, ResidueBuffer itemResidues) {
+            items.add(item);
+            residues.add(itemResidues);
+        }
+    }
+
+    /**
+     * A gene to convert, with the residues of its parts and proteins already packed and
+     * checksummed.
+     */
+    private static class PreparedGene
+    {
+        private final JsonNode geneRoot;
+        private final int neighbourIndex;
+        // keyed on identity, equals() would compare whole subtrees
+        private final Map<JsonNode, PackedResidues> residues = new IdentityHashMap<>();
+
+        private PreparedGene(JsonNode geneRoot, int neighbourIndex) {
+            this.geneRoot = geneRoot;
+            this.neighbourIndex = neighbourIndex;
+        }
+
+        // nothing is added for missing or empty residues
+        private void add(JsonNode node, ResidueBuffer nodeResidues) {
+            if (nodeResidues != null && nodeResidues.length() > 0) {
+                residues.put(node, new PackedResidues(nodeResidues));
+            }
+        }
+    }
+
+    /**
+     * Residues and their md5 checksum.
+     */
+    private static class PackedResidues
+    {
+        private final ResidueBuffer residues;
+        private final String md5checksum;
+
+        private PackedResidues(ResidueBuffer residues) {
+            this.residues = residues;
+            this.md5checksum = residues.md5checksum();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+
+public class FastaIndexTest extends TestCase
+{
+    // 25 bases of I in lines of 10, then 7 bases of II
+    private static final String FASTA = ">I chromosome one\n"
+        + "ACGTACGTAA\n"
+        + "CCGGTTAACC\n"
+        + "GGGTT\n"
+        + ">II\n"
+        + "TTTAAAC\n";
+    private File file;
+    private File faiFile;
+
+    public FastaIndexTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("fasta-index", ".fa");
+        faiFile = new File(file.getPath() + ".fai");
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+        faiFile.delete();
+    }
+
+    public void testForward() throws Exception {
+        write(file, FASTA);
+        FastaIndex fasta = new FastaIndex(file);
+        assertTrue(fasta.hasSequence("I"));
+        assertFalse(fasta.hasSequence("chromosome"));
+        assertEquals("ACGTACGTAA", fasta.getResidues("I", 1, 10, false).toString());
+        // across both line breaks
+        assertEquals("AACCGGTTAACCGG", fasta.getResidues("I", 9, 22, false).toString());
+        assertEquals("GGGTT", fasta.getResidues("I", 21, 25, false).toString());
+        assertEquals("TTTAAAC", fasta.getResidues("II", 1, 7, false).toString());
+    }
+
+    public void testReverseComplement() throws Exception {
+        write(file, FASTA);
+        FastaIndex fasta = new FastaIndex(file);
+        // AACCGGTTAACCGG
+        assertEquals("CCGGTTAACCGGTT", fasta.getResidues("I", 9, 22, true).toString());
+        assertEquals("GTTTAAA", fasta.getResidues("II", 1, 7, true).toString());
+    }
+
+    public void testCrlf() throws Exception {
+        write(file, FASTA.replace("\n", "\r\n"));
+        FastaIndex fasta = new FastaIndex(file);
+        assertEquals("AACCGGTTAACCGG", fasta.getResidues("I", 9, 22, false).toString());
+        assertEquals("CCGGTTAACCGGTT", fasta.getResidues("I", 9, 22, true).toString());
+        assertEquals("TTTAAAC", fasta.getResidues("II", 1, 7, false).toString());
+    }
+
+    public void testSoftMasked() throws Exception {
+        write(file, ">I\nACGTacgtAA\nccggTTAACC\n");
+        FastaIndex fasta = new FastaIndex(file);
+        assertEquals("ACGTACGTAACCGG", fasta.getResidues("I", 1, 14, false).toString());
+        assertEquals("CCGGTTACGTACGT", fasta.getResidues("I", 1, 14, true).toString());
+    }
+
+    public void testExistingFai() throws Exception {
+        write(file, FASTA);
+        // as written by samtools faidx: name, length, offset, bases and bytes per line, with
+        // II renamed to show the names come from the index
+        write(faiFile, "I\t25\t18\t10\t11\nchrII\t7\t50\t7\t8\n");
+        FastaIndex fasta = new FastaIndex(file);
+        assertFalse(fasta.hasSequence("II"));
+        assertEquals("AACCGGTTAACCGG", fasta.getResidues("I", 9, 22, false).toString());
+        assertEquals("TTTAAAC", fasta.getResidues("chrII", 1, 7, false).toString());
+    }
+
+    public void testRaggedLines() throws Exception {
+        write(file, ">I\nACGTACGTAA\nCCGGT\nTAACCGGGTT\n");
+        try {
+            new FastaIndex(file);
+            fail("Expected a short line before the last one to be refused");
+        } catch (IOException e) {
+            // expected
+        }
+        write(file, ">I\nACGTACGTAA\nCCGGTTAACCGG\n");
+        try {
+            new FastaIndex(file);
+            fail("Expected a line longer than the first to be refused");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import junit.framework.TestCase;
+
+public class GeneFingerprintsTest extends TestCase
+{
+    private ObjectMapper mapper = new ObjectMapper();
+    private File file;
+    private File manifestFile;
+
+    public GeneFingerprintsTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("genes", ".fingerprints");
+        file.delete();
+        manifestFile = new File(file.getPath() + ".manifest");
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+        manifestFile.delete();
+    }
+
+    public void testFieldOrder() throws Exception {
+        assertEquals(GeneFingerprints.fingerprint(gene("{\"a\":1,\"b\":{\"c\":[1,2],\"d\":\"x\"}}")),
+                GeneFingerprints.fingerprint(gene("{\"b\":{\"d\":\"x\",\"c\":[1,2]},\"a\":1}")));
+        // array order does matter
+        assertFalse(GeneFingerprints.fingerprint(gene("{\"c\":[1,2]}")).equals(
+                GeneFingerprints.fingerprint(gene("{\"c\":[2,1]}"))));
+    }
+
+    public void testPackedResidues() throws Exception {
+        // as read by a streaming load, with the residues packed while parsing
+        ObjectNode packed = (ObjectNode) gene("{\"a\":1}");
+        packed.putPOJO("residues", ResidueBuffer.nucleotides("ACGTNACGT"));
+        assertEquals(GeneFingerprints.fingerprint(gene("{\"a\":1,\"residues\":\"ACGTNACGT\"}")),
+                GeneFingerprints.fingerprint(packed));
+    }
+
+    public void testRoundTrip() throws Exception {
+        GeneFingerprints first = new GeneFingerprints(file);
+        assertTrue(first.isChanged("SPAC1.01", gene("{\"name\":\"abc1\"}")));
+        assertTrue(first.isChanged("SPAC1.02", gene("{\"name\":\"abc2\"}")));
+        assertTrue(first.isChanged("SPAC1.03", gene("{\"name\":\"abc3\"}")));
+        assertEquals(0, first.getUnchangedCount());
+        first.save(file);
+
+        GeneFingerprints second = new GeneFingerprints(file);
+        assertFalse(second.isChanged("SPAC1.01", gene("{\"name\":\"abc1\"}")));
+        assertTrue(second.isChanged("SPAC1.02", gene("{\"name\":\"abc2\",\"product\":\"p\"}")));
+        assertTrue(second.isChanged("SPAC1.04", gene("{\"name\":\"abc4\"}")));
+        assertEquals(1, second.getUnchangedCount());
+        second.writeManifest(manifestFile);
+        List<String> manifest = Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals("# 1 added, 1 changed, 1 removed, 1 unchanged", manifest.get(0));
+        assertEquals("added\tSPAC1.04", manifest.get(1));
+        assertEquals("changed\tSPAC1.02", manifest.get(2));
+        assertEquals("removed\tSPAC1.03", manifest.get(3));
+        assertEquals(4, manifest.size());
+
+        // a load that isn't saved leaves the last saved fingerprints to compare against
+        GeneFingerprints third = new GeneFingerprints(file);
+        assertTrue(third.isChanged("SPAC1.02", gene("{\"name\":\"abc2\",\"product\":\"p\"}")));
+        assertTrue(third.isChanged("SPAC1.04", gene("{\"name\":\"abc4\"}")));
+    }
+
+    public void testNeighbours() throws Exception {
+        GeneFingerprints first = new GeneFingerprints(file);
+        first.isChanged("SPAC1.01", gene("{\"name\":\"abc1\"}"));
+        first.isChanged("SPAC1.02", gene("{\"name\":\"abc2\"}"));
+        assertTrue(first.isNeighboursChanged("SPAC1.01", ",SPAC1.02:10"));
+        assertTrue(first.isNeighboursChanged("SPAC1.02", "SPAC1.01:10,"));
+        first.save(file);
+
+        GeneFingerprints second = new GeneFingerprints(file);
+        assertFalse(second.isChanged("SPAC1.01", gene("{\"name\":\"abc1\"}")));
+        assertFalse(second.isChanged("SPAC1.02", gene("{\"name\":\"abc2\"}")));
+        assertTrue(second.isChanged("SPAC1.03", gene("{\"name\":\"abc3\"}")));
+        assertFalse(second.isNeighboursChanged("SPAC1.01", ",SPAC1.02:10"));
+        assertTrue(second.isNeighboursChanged("SPAC1.02", "SPAC1.01:10,SPAC1.03:5"));
+    }
+
+    public void testWithoutNeighbours() throws Exception {
+        // as written before neighbours were recorded
+        Files.write(file.toPath(), "SPAC1.01\tabc\n".getBytes(StandardCharsets.UTF_8));
+        GeneFingerprints fingerprints = new GeneFingerprints(file);
+        assertTrue(fingerprints.isNeighboursChanged("SPAC1.01", ""));
+    }
+
+    private JsonNode gene(String json) throws Exception {
+        return mapper.readTree(json);
+    }
+}
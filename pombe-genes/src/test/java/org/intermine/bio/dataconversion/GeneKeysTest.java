@@ -0,0 +1,46 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.InputStream;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class GeneKeysTest extends TestCase
+{
+    public GeneKeysTest(String arg) {
+        super(arg);
+    }
+
+    public void testIncrementalKeys() throws Exception {
+        Properties full = load("pombe-genes_keys.properties");
+        Properties incremental = load("pombe-genes-incremental_keys.properties");
+        // an incremental load merges everything a full load does
+        for (String key : full.stringPropertyNames()) {
+            assertEquals(key, full.getProperty(key), incremental.getProperty(key));
+        }
+        // but the keys for the parts of a changed gene are left out of full loads
+        assertNotNull(incremental.getProperty("Location.key_feature_locatedon"));
+        assertNull(full.getProperty("Location.key_feature_locatedon"));
+        assertNull(full.getProperty("Synonym.key_synonym"));
+        assertNull(full.getProperty("Transcript.key_primaryidentifier"));
+    }
+
+    private Properties load(String name) throws Exception {
+        Properties properties = new Properties();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(name)) {
+            assertNotNull(name, in);
+            properties.load(in);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,91 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+public class GeneNeighboursTest extends TestCase
+{
+    public GeneNeighboursTest(String arg) {
+        super(arg);
+    }
+
+    public void testStrands() throws Exception {
+        GeneNeighbours neighbours = new GeneNeighbours();
+        // added out of order
+        int c = neighbours.add("I", 500, 600, 1);
+        int a = neighbours.add("I", 100, 200, 1);
+        int b = neighbours.add("I", 300, 400, -1);
+
+        // forward: upstream is the gene before
+        assertEquals(b, neighbours.getUpstream(c));
+        assertEquals(-1, neighbours.getDownstream(c));
+        // reverse: upstream is the gene after
+        assertEquals(c, neighbours.getUpstream(b));
+        assertEquals(a, neighbours.getDownstream(b));
+        assertEquals(-1, neighbours.getUpstream(a));
+        assertEquals(b, neighbours.getDownstream(a));
+
+        assertEquals(99, neighbours.getDistance(a, b));
+        assertEquals(99, neighbours.getDistance(b, a));
+        assertEquals(99, neighbours.getDistance(c, b));
+    }
+
+    public void testChromosomeEnds() throws Exception {
+        GeneNeighbours neighbours = new GeneNeighbours();
+        int a = neighbours.add("I", 100, 200, 1);
+        int b = neighbours.add("II", 300, 400, 1);
+        int c = neighbours.add("II", 10, 20, -1);
+        // alone on its chromosome
+        assertEquals(-1, neighbours.getUpstream(a));
+        assertEquals(-1, neighbours.getDownstream(a));
+        // not the neighbour of a gene on another chromosome
+        assertEquals(c, neighbours.getUpstream(b));
+        assertEquals(-1, neighbours.getDownstream(b));
+        assertEquals(b, neighbours.getUpstream(c));
+        assertEquals(-1, neighbours.getDownstream(c));
+        assertEquals(3, neighbours.size());
+    }
+
+    public void testTiesAndOverlaps() throws Exception {
+        GeneNeighbours neighbours = new GeneNeighbours();
+        int a = neighbours.add("I", 100, 200, 1);
+        // same start: ordered as added
+        int b = neighbours.add("I", 100, 150, 1);
+        int c = neighbours.add("I", 190, 300, 1);
+        assertEquals(a, neighbours.getUpstream(b));
+        assertEquals(c, neighbours.getDownstream(b));
+        assertEquals(b, neighbours.getDownstream(a));
+        assertEquals(0, neighbours.getDistance(a, b));
+        assertEquals(39, neighbours.getDistance(b, c));
+    }
+
+    public void testAddAfterQuery() throws Exception {
+        GeneNeighbours neighbours = new GeneNeighbours();
+        int a = neighbours.add("I", 100, 200, 1);
+        assertEquals(-1, neighbours.getDownstream(a));
+        int b = neighbours.add("I", 300, 400, 1);
+        assertEquals(b, neighbours.getDownstream(a));
+    }
+
+    public void testGrow() throws Exception {
+        GeneNeighbours neighbours = new GeneNeighbours();
+        for (int i = 0; i < 3000; i++) {
+            neighbours.add("I", 100000 - i * 10, 100005 - i * 10, 1);
+        }
+        assertEquals(1, neighbours.getUpstream(0));
+        assertEquals(-1, neighbours.getDownstream(0));
+        // added right to left
+        assertEquals(2999, neighbours.getUpstream(2998));
+        assertEquals(2997, neighbours.getDownstream(2998));
+        assertEquals(4, neighbours.getDistance(0, 1));
+    }
+}
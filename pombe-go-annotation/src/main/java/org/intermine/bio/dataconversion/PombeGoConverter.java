@@ -243,7 +243,7 @@ public class PombeGoConverter extends BioFileConverter
 
         initialiseMapsForFile();
 
-        BufferedReader br = new BufferedReader(reader);
+        BufferedReader br = new BufferedReader(CompressedInput.reader(getCurrentFile(), reader));
         String line = null;
         // loop through entire file
         while ((line = br.readLine()) != null) {
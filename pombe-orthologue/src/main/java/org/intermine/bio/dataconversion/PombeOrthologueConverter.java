@@ -73,7 +73,7 @@ public class PombeOrthologueConverter extends BioFileConverter
         String organismRefId = storeOrganism(POMBE_TAXON_ID);
         String homoloueOrgRefId = storeOrganism(homologueTaxonId);
 
-        BufferedReader br = new BufferedReader(reader);
+        BufferedReader br = new BufferedReader(CompressedInput.reader(getCurrentFile(), reader));
         String line;
         while ((line = br.readLine()) != null) {
             if (isHeader(line)) {
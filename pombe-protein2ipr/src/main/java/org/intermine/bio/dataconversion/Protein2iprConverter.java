@@ -68,9 +68,9 @@ public class Protein2iprConverter extends BioFileConverter
 
     private Collection<String> taxonIds = new ArrayList<String>();
 
-    private Set<String> proteinIds = new HashSet<String>();
+    private AccessionSet proteinIds = new AccessionSet();
     private Set<MultiKey> xrefs = new HashSet<MultiKey>();
-    private Map<String, String> proteinMap = new HashMap<String, String>();
+    private AccessionMap<String> proteinMap = new AccessionMap<String>();
     private Map<String, String> proteinDomainMap = new HashMap<String, String>();
 
     /**
@@ -116,7 +116,8 @@ public class Protein2iprConverter extends BioFileConverter
         getProteinIds();
         LOG.info("Found " + proteinIds.size() + " protein ids.");
 
-        Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+        Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(
+                CompressedInput.reader(getCurrentFile(), reader));
         int count = 0;
         int skipped = 0;
         while (iterator.hasNext()) {
@@ -0,0 +1,377 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Stack;
+
+import org.apache.commons.lang.StringUtils;
+import org.intermine.xml.full.Item;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The UniProt handler as it was before elements were dispatched on int ids, kept as the
+ * baseline for UniprotHandlerBenchmark. startElement, endElement and characters are copied
+ * unchanged from the parse-only handler; keywords, publications and features come from maps
+ * here instead of the converter's synchronized caches.
+ */
+public class BaselineUniprotHandler extends DefaultHandler
+{
+    private static final UniprotConfig CONFIG = new UniprotConfig();
+    private static final String POMBE_TAXON_ID = "4896";
+    private static final String LICENCE = "http://creativecommons.org/licenses/by/4.0/";
+
+    private final PombeUniprotConverter converter;
+    private final String datasourceRefId;
+    private Map<String, String> keywords = new HashMap<String, String>();
+    private Map<String, String> pubs = new HashMap<String, String>();
+    private UniprotEntry entry;
+    private Stack<String> stack = new Stack<String>();
+    private String attName = null;
+    private StringBuffer attValue = null;
+    private PombeUniprotConverter.DiseaseHolder disease = null;
+
+    /**
+     * @param converter converter creating the items
+     */
+    public BaselineUniprotHandler(PombeUniprotConverter converter) {
+        this.converter = converter;
+        this.datasourceRefId = converter.getDataSource("UniProt");
+    }
+
+    /**
+     * @return the entry parsed last
+     */
+    public UniprotEntry getEntry() {
+        return entry;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attrs)
+        throws SAXException {
+
+        String previousQName = null;
+        if (!stack.isEmpty()) {
+            previousQName = stack.peek();
+        }
+        attName = null;
+        if ("entry".equals(qName)) {
+            entry = new UniprotEntry();
+            String dataSetTitle = getAttrValue(attrs, "dataset") + " data set";
+            synchronized (converter) {
+                entry.setDatasetRefId(converter.getDataSet(dataSetTitle, datasourceRefId,
+                        LICENCE));
+            }
+        } else if ("fullName".equals(qName) && stack.search("protein") == 2
+                &&  ("recommendedName".equals(previousQName)
+                        || "submittedName".equals(previousQName))) {
+            attName = "proteinName";
+        } else if (("fullName".equals(qName) || "shortName".equals(qName))
+                && stack.search("protein") == 2
+                && ("alternativeName".equals(previousQName)
+                        || "recommendedName".equals(previousQName)
+                        || "submittedName".equals(previousQName))) {
+            attName = "synonym";
+        } else if ("fullName".equals(qName)
+                && "recommendedName".equals(previousQName)
+                && stack.search("component") == 2) {
+            attName = "component";
+        } else if ("name".equals(qName) && "entry".equals(previousQName)) {
+            attName = "primaryIdentifier";
+        } else if ("ecNumber".equals(qName)) {
+            attName = "ecNumber";
+        } else if ("accession".equals(qName)) {
+            attName = "value";
+        } else if ("dbReference".equals(qName) && "organism".equals(previousQName)) {
+            //we will not load the organism set in the uniprot file
+            entry.setTaxonId(POMBE_TAXON_ID);
+        } else if ("name".equals(qName)  && "isoform".equals(previousQName)) {
+            attName = "isoformname";
+        } else if ("id".equals(qName)  && "isoform".equals(previousQName)) {
+            // TODO only use the first isoform
+            // how does xml parser work for multiple isoforms?
+            attName = "isoform";
+        } else if ("sequence".equals(qName)  && "isoform".equals(previousQName)) {
+            String sequenceType = getAttrValue(attrs, "type");
+            // ignore "external" types
+            if ("displayed".equals(sequenceType)) {
+                entry.addCanonicalIsoform(entry.getAttribute());
+            } else if ("described".equals(sequenceType)) {
+                entry.addIsoform(entry.getAttribute());
+            }
+        } else if ("sequence".equals(qName)) {
+            String strLength = getAttrValue(attrs, "length");
+            String strMass = getAttrValue(attrs, "mass");
+            if (strLength != null) {
+                entry.setLength(strLength);
+                attName = "residues";
+            }
+            if (strMass != null) {
+                entry.setMolecularWeight(strMass);
+            }
+            boolean isFragment = false;
+            if (getAttrValue(attrs, "fragment") != null) {
+                isFragment = true;
+            }
+            entry.setFragment(isFragment);
+        } else if ("feature".equals(qName) && getAttrValue(attrs, "type") != null) {
+            Item feature = getFeature(getAttrValue(attrs, "type"), getAttrValue(attrs,
+                "description"), getAttrValue(attrs, "status"));
+            entry.addFeature(feature);
+        } else if (("begin".equals(qName) || "end".equals(qName))
+                && entry.processingFeature()
+                && getAttrValue(attrs, "position") != null) {
+            entry.addFeatureLocation(qName, getAttrValue(attrs, "position"));
+        } else if ("position".equals(qName) && entry.processingFeature()
+                && getAttrValue(attrs, "position") != null) {
+            entry.addFeatureLocation("begin", getAttrValue(attrs, "position"));
+            entry.addFeatureLocation("end", getAttrValue(attrs, "position"));
+        } else if ("dbReference".equals(qName) && "citation".equals(previousQName)
+                && "PubMed".equals(getAttrValue(attrs, "type"))) {
+            entry.addPub(getPub(getAttrValue(attrs, "id")));
+        } else if ("comment".equals(qName)
+                && StringUtils.isNotEmpty(getAttrValue(attrs, "type"))) {
+            entry.setCommentType(getAttrValue(attrs, "type"));
+        } else if ("text".equals(qName) && "comment".equals(previousQName)) {
+            attName = "text";
+            String commentEvidence = getAttrValue(attrs, "evidence");
+            if (StringUtils.isNotEmpty(commentEvidence)) {
+                entry.setCommentEvidence(commentEvidence);
+            }
+        } else if ("keyword".equals(qName)) {
+            attName = "keyword";
+        } else if ("dbReference".equals(qName) && "entry".equals(previousQName)) {
+            entry.addDbref(getAttrValue(attrs, "type"), getAttrValue(attrs, "id"));
+        } else if ("property".equals(qName) && "dbReference".equals(previousQName)) {
+            String type = getAttrValue(attrs, "type");
+            String geneDesignation = CONFIG.getGeneDesignation(entry.getTaxonId());
+            if (type.equals(geneDesignation)) {
+                entry.addGeneDesignation(getAttrValue(attrs, "value"));
+            } else if ("evidence".equals(type)) {
+                entry.addGOEvidence(entry.getDbref(), getAttrValue(attrs, "value"));
+            }
+        } else if ("name".equals(qName) && "gene".equals(previousQName)) {
+            attName = getAttrValue(attrs, "type");
+        } else if ("evidence".equals(qName) && "entry".equals(previousQName)) {
+            String evidenceCode = getAttrValue(attrs, "key");
+            String pubmedString = getAttrValue(attrs, "attribute");
+            if (StringUtils.isNotEmpty(evidenceCode) && StringUtils.isNotEmpty(pubmedString)) {
+                String pubRefId = getEvidence(pubmedString);
+                entry.addPubEvidence(evidenceCode, pubRefId);
+            }
+        } else if ("disease".equals(previousQName) && ("name".equals(qName)
+                || "acronym".equals(qName) || "description".equals(qName))) {
+            attName = "disease";
+        // <dbReference type="MIM" id="601665"/>
+        } else if ("dbReference".equals(qName) && "disease".equals(previousQName)) {
+            if (disease == null) {
+                disease = converter.new DiseaseHolder();
+            }
+            String type = getAttrValue(attrs, "type");
+            String id = getAttrValue(attrs, "id");
+            disease.setIdentifier(type + ":" + id);
+        } else if ("scope".equals(qName) && "reference".equals(previousQName)) {
+            attName = "scope";
+        } else if ("dbreference".equals(qName) || "comment".equals(qName)
+                || "isoform".equals(qName) || "gene".equals(qName)) {
+            // set temporary holder variables to null
+            entry.reset();
+        }
+        super.startElement(uri, localName, qName, attrs);
+        stack.push(qName);
+        attValue = new StringBuffer();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endElement(String uri, String localName, String qName)
+        throws SAXException {
+        super.endElement(uri, localName, qName);
+        stack.pop();
+        if (attName == null && attValue.toString() == null) {
+            return;
+        }
+
+        String previousQName = null;
+        if (!stack.isEmpty()) {
+            previousQName = stack.peek();
+        }
+
+        if ("sequence".equals(qName)) {
+            entry.setSequence(attValue.toString().replaceAll("\n", ""));
+        } else if (StringUtils.isNotEmpty(attName) && "proteinName".equals(attName)) {
+            entry.setName(attValue.toString());
+        } else if (StringUtils.isNotEmpty(attName) && "synonym".equals(attName)) {
+            entry.addProteinName(attValue.toString());
+        } else if (StringUtils.isNotEmpty(attName) && "ecNumber".equals(attName)) {
+            entry.addECNumber(attValue.toString());
+        } else if ("name".equals(qName) && "gene".equals(previousQName)) {
+            entry.addGeneName(attName, attValue.toString());
+        } else if ("keyword".equals(qName)) {
+            entry.addKeyword(getKeyword(attValue.toString()));
+        } else if (StringUtils.isNotEmpty(attName)
+                && "primaryIdentifier".equals(attName)) {
+            entry.setPrimaryIdentifier(attValue.toString());
+        } else if ("accession".equals(qName)) {
+            String accession = attValue.toString();
+            entry.addAccession(accession);
+        } else if (StringUtils.isNotEmpty(attName) && "disease".equals(attName)
+                && ("name".equals(qName) || "acronym".equals(qName)
+                        || "description".equals(qName))
+                && "disease".equals(previousQName)) {
+            if (disease == null) {
+                disease = converter.new DiseaseHolder();
+            }
+            if ("name".equals(qName)) {
+                disease.setDisease("name", attValue.toString());
+            } else if ("description".equals(qName)) {
+                disease.setDisease("description", attValue.toString());
+            } else if ("acronym".equals(qName)) {
+                disease.setDisease("acronym", attValue.toString());
+            }
+        } else if ("id".equals(qName) && "isoform".equals(previousQName)) {
+            String accession = attValue.toString();
+
+            // 119 isoforms have commas in their IDs
+            if (accession.contains(",")) {
+                String[] accessions = accession.split("[, ]+");
+                accession = accessions[0];
+                for (int i = 1; i < accessions.length; i++) {
+                    entry.addIsoformSynonym(accessions[i]);
+                }
+            }
+
+            // attribute should be empty, unless isoform has two <id>s
+            if (entry.getAttribute() == null) {
+                entry.addAttribute(accession);
+            } else {
+                // second <id> value is ignored and added as a synonym
+                entry.addIsoformSynonym(accession);
+            }
+        } else if ("comment".equals(qName)) {
+            // on closing a comment, make sure the disease holder is empty
+            disease = null;
+        } else if ("scope".equals(qName)) {
+            String scope = attValue.toString();
+            // the publication we just processed was RETRACTED, so we don't want to load
+            if (scope.contains("RETRACTED")) {
+                entry.deleteLastPub();
+            }
+        } else if ("name".equals(qName) && "isoform".equals(previousQName)) {
+            if (!attValue.toString().matches("[0-9]+")) {
+                entry.addIsoformSynonym(attValue.toString());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        int st = start;
+        int l = length;
+        if (attName != null) {
+
+            // DefaultHandler may call this method more than once for a single
+            // attribute content -> hold text & create attribute in endElement
+            while (l > 0) {
+                boolean whitespace = false;
+                switch(ch[st]) {
+                    case ' ':
+                    case '\r':
+                    case '\n':
+                    case '\t':
+                        whitespace = true;
+                        break;
+                    default:
+                        break;
+                }
+                if (!whitespace) {
+                    break;
+                }
+                ++st;
+                --l;
+            }
+
+            if (l > 0) {
+                StringBuffer s = new StringBuffer();
+                s.append(ch, st, l);
+                attValue.append(s);
+            }
+        }
+    }
+
+    private String getKeyword(String title) {
+        String refId = keywords.get(title);
+        if (refId == null) {
+            Item item = converter.createItem("OntologyTerm");
+            item.setAttribute("name", title);
+            refId = item.getIdentifier();
+            keywords.put(title, refId);
+        }
+        return refId;
+    }
+
+    private String getEvidence(String attribute) {
+        if (attribute.contains("=")) {
+            String[] bits = attribute.split("=");
+            if (bits.length == 2) {
+                String pubMedId = bits[1];
+                if (StringUtils.isNotEmpty(pubMedId)) {
+                    return getPub(pubMedId);
+                }
+            }
+        }
+        return null;
+    }
+
+    private String getPub(String pubMedId) {
+        String refId = pubs.get(pubMedId);
+        if (refId == null) {
+            Item item = converter.createItem("Publication");
+            item.setAttribute("pubMedId", pubMedId);
+            refId = item.getIdentifier();
+            pubs.put(pubMedId, refId);
+        }
+        return refId;
+    }
+
+    private Item getFeature(String type, String description, String status) {
+        Item feature = converter.createItem("UniProtFeature");
+        feature.setAttribute("type", type);
+        feature.setReference("feature", getKeyword(type));
+        String featureDescription = description;
+        if (status != null) {
+            featureDescription = (description == null ? status : description
+                    + " (" + status + ")");
+        }
+        if (!StringUtils.isEmpty(featureDescription)) {
+            feature.setAttribute("description", featureDescription);
+        }
+        return feature;
+    }
+
+    private static String getAttrValue(Attributes attrs, String name) {
+        if (attrs.getValue(name) != null) {
+            return attrs.getValue(name).trim();
+        }
+        return null;
+    }
+}
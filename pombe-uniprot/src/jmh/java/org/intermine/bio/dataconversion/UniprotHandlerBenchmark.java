@@ -0,0 +1,131 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.model.fulldata.Item;
+import org.intermine.util.SAXParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+/**
+ * Time to convert a slice of a real UniProt file, eg. the first few thousand entries of
+ * uniprot_sprot.xml saved as 4896_uniprot_sprot.xml in the directory given by the
+ * uniprot.slice system property. Run with gradle jmh -Duniprot.slice=...
+ *
+ * parse and parseBaseline only build the slice's entries, with the current handler and with
+ * BaselineUniprotHandler, the handler from before elements were dispatched on int ids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UniprotHandlerBenchmark
+{
+    @Param({"4896"})
+    public String taxonId;
+
+    private File dataDir;
+    private Model model;
+    private PombeUniprotConverter parser;
+    private BaselineUniprotHandler baselineHandler;
+    private List<byte[]> entries;
+
+    /**
+     * Find the slice and split it into entries.
+     *
+     * @throws Exception if the slice can't be read
+     */
+    @Setup
+    public void setUp() throws Exception {
+        String slice = System.getProperty("uniprot.slice");
+        if (slice == null) {
+            throw new IllegalStateException("Set uniprot.slice to the directory holding "
+                    + taxonId + "_uniprot_sprot.xml");
+        }
+        dataDir = new File(slice);
+        model = Model.getInstanceByName("genomic");
+        parser = new PombeUniprotConverter(
+                new MockItemWriter(new HashMap<String, Item>()), model);
+        baselineHandler = new BaselineUniprotHandler(parser);
+        entries = new ArrayList<byte[]>();
+        File sliceFile = new File(dataDir, taxonId + "_uniprot_sprot.xml");
+        try (InputStream in = CompressedInput.openStream(sliceFile)) {
+            EntryScanner scanner = new EntryScanner(in);
+            byte[] fragment;
+            while ((fragment = scanner.next()) != null) {
+                entries.add(fragment);
+            }
+        }
+    }
+
+    /**
+     * @return number of items, so the conversion isn't optimised away
+     * @throws Exception if the slice can't be converted
+     */
+    @Benchmark
+    public int convert() throws Exception {
+        MockItemWriter writer = new MockItemWriter(new HashMap<String, Item>());
+        PombeUniprotConverter converter = new PombeUniprotConverter(writer, model);
+        converter.setUniprotOrganisms(taxonId);
+        converter.process(dataDir);
+        converter.close();
+        return writer.getItems().size();
+    }
+
+    /**
+     * @return number of accessions, so the parsing isn't optimised away
+     */
+    @Benchmark
+    public int parse() {
+        int accessions = 0;
+        for (byte[] fragment : entries) {
+            accessions += parser.parseEntry(fragment).getAccessions().size();
+        }
+        return accessions;
+    }
+
+    /**
+     * @return number of accessions, so the parsing isn't optimised away
+     * @throws Exception if an entry can't be parsed
+     */
+    @Benchmark
+    public int parseBaseline() throws Exception {
+        int accessions = 0;
+        for (byte[] fragment : entries) {
+            SAXParser.parse(new InputSource(new ByteArrayInputStream(fragment)),
+                    baselineHandler);
+            accessions += baselineHandler.getEntry().getAccessions().size();
+        }
+        return accessions;
+    }
+}
@@ -0,0 +1,205 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a UniProt XML file into its &lt;entry&gt; elements without parsing them, so the
+ * entries can be parsed on other threads. Each fragment is the bytes from &lt;entry to the
+ * matching &lt;/entry&gt;, a complete XML document on its own. Entries don't nest. Comments
+ * and CDATA sections are skipped over, so markup inside them doesn't start or end an entry.
+ */
+public class EntryScanner
+{
+    private static final byte[] START = ascii("<entry");
+    private static final byte[] END = ascii("</entry>");
+    private static final byte[] COMMENT_START = ascii("<!--");
+    private static final byte[] COMMENT_END = ascii("-->");
+    private static final byte[] CDATA_START = ascii("<![CDATA[");
+    private static final byte[] CDATA_END = ascii("]]>");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    // next byte to scan and end of the bytes read into the buffer
+    private int pos = 0;
+    private int limit = 0;
+    // offset in the file of buffer[0]
+    private long bufferOffset = 0;
+    // start in the buffer of the entry's bytes not yet copied to the fragment, -1 between
+    // entries
+    private int entryStart = -1;
+    private byte[] fragment = new byte[BUFFER_SIZE];
+    private int fragmentSize = 0;
+
+    /**
+     * @param in the UniProt XML, closed by the caller
+     */
+    public EntryScanner(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the next entry, or null at the end of the file
+     * @throws IOException if the file can't be read, or ends inside an entry
+     */
+    public byte[] next() throws IOException {
+        if (!skipToStart()) {
+            return null;
+        }
+        entryStart = pos;
+        fragmentSize = 0;
+        pos += START.length + 1;
+        while (true) {
+            if (!findMarkup()) {
+                throw new IOException("End of file inside <entry>");
+            }
+            if (startsWith(END)) {
+                pos += END.length;
+                copyToFragment();
+                entryStart = -1;
+                return Arrays.copyOf(fragment, fragmentSize);
+            }
+            if (!skipIgnored()) {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * @return number of bytes read so far, the offset just after the last entry returned
+     */
+    public long getPosition() {
+        return bufferOffset + pos;
+    }
+
+    // move to the next "<entry" followed by whitespace or '>'
+    private boolean skipToStart() throws IOException {
+        while (findMarkup()) {
+            if (startsWith(START) && available(START.length + 1)) {
+                byte b = buffer[pos + START.length];
+                if (b == '>' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    return true;
+                }
+            }
+            if (!skipIgnored()) {
+                pos++;
+            }
+        }
+        return false;
+    }
+
+    // move to the next '<', with enough bytes after it to tell what it starts
+    private boolean findMarkup() throws IOException {
+        while (true) {
+            while (pos < limit && buffer[pos] != '<') {
+                pos++;
+            }
+            if (pos < limit) {
+                available(CDATA_START.length);
+                return true;
+            }
+            if (!available(1)) {
+                return false;
+            }
+        }
+    }
+
+    // skip a comment or CDATA section starting at pos
+    private boolean skipIgnored() throws IOException {
+        if (startsWith(COMMENT_START)) {
+            pos += COMMENT_START.length;
+            skipPast(COMMENT_END, "comment");
+            return true;
+        }
+        if (startsWith(CDATA_START)) {
+            pos += CDATA_START.length;
+            skipPast(CDATA_END, "CDATA section");
+            return true;
+        }
+        return false;
+    }
+
+    private void skipPast(byte[] end, String what) throws IOException {
+        while (true) {
+            while (pos < limit && buffer[pos] != end[0]) {
+                pos++;
+            }
+            if (!available(end.length)) {
+                throw new IOException("End of file inside " + what);
+            }
+            if (startsWith(end)) {
+                pos += end.length;
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private boolean startsWith(byte[] bytes) {
+        if (limit - pos < bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer[pos + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // read until there are at least count bytes from pos, or the end of the file
+    private boolean available(int count) throws IOException {
+        if (limit - pos >= count) {
+            return true;
+        }
+        copyToFragment();
+        int kept = limit - pos;
+        System.arraycopy(buffer, pos, buffer, 0, kept);
+        bufferOffset += pos;
+        if (entryStart >= 0) {
+            entryStart = 0;
+        }
+        pos = 0;
+        limit = kept;
+        while (limit < count) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    // copy the entry's bytes up to pos to the fragment, before they leave the buffer
+    private void copyToFragment() {
+        if (entryStart < 0) {
+            return;
+        }
+        int count = pos - entryStart;
+        if (fragmentSize + count > fragment.length) {
+            fragment = Arrays.copyOf(fragment, Math.max(fragment.length * 2,
+                    fragmentSize + count));
+        }
+        System.arraycopy(buffer, entryStart, fragment, fragmentSize, count);
+        fragmentSize += count;
+        entryStart = pos;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -19,26 +19,40 @@ import org.intermine.metadata.StringUtil;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.util.SAXParser;
 import org.intermine.xml.full.Item;
+import org.intermine.xml.full.ItemFactory;
 import org.intermine.xml.full.ReferenceList;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.Reader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 /**
  * DataConverter to parse UniProt data specific for PombeMine where the model is slightly different
  * All protein will be linked to the organism 4896
@@ -48,24 +62,68 @@ public class PombeUniprotConverter extends BioDirectoryConverter
 {
     private static final UniprotConfig CONFIG = new UniprotConfig();
     private static final Logger LOG = Logger.getLogger(UniprotConverter.class);
+    // caches for the whole run, shared by the taxon threads so only used by the get methods
+    // synchronized on the converter
     private Map<String, String> pubs = new HashMap<String, String>();
-    private Set<Item> synonymsAndXrefs = new HashSet<Item>();
-    // taxonId -> [md5Checksum -> stored protein identifier]
-    private Map<String, Map<String, String>> sequences = new HashMap<String, Map<String, String>>();
     // md5Checksum -> sequence item identifier  (ensure all sequences are unique across organisms)
-    private Map<String, String> allSequences = new HashMap<String, String>();
+    private SequenceRegistry allSequences = new SequenceRegistry();
+    private File sequenceRegistryFile = null;
     private Map<String, String> ontologies = new HashMap<String, String>();
     private Map<String, String> keywords = new HashMap<String, String>();
-    private Map<String, Item> genes = new HashMap<String, Item>();
     private Map<String, String> goterms = new HashMap<String, String>();
     private Map<String, String> goEvidenceCodes = new HashMap<String, String>();
     private Map<String, String> ecNumbers = new HashMap<String, String>();
-    private Map<String, String> proteins = new LinkedHashMap<String, String>();
     private static final String POMBE_TAXON_ID = "4896";
     private static final int POSTGRES_INDEX_SIZE = 2712;
 
     // don't allow duplicate identifiers
-    private Set<String> identifiers = null;
+    private AccessionSet identifiers = new AccessionSet();
+    // dedup maps on disk rather than the heap, if set
+    private File dedupIndexDir = null;
+    private DiskHashIndex identifierIndex = null;
+    private DiskHashIndex sequenceIndex = null;
+    private AtomicInteger taxonIndexCount = new AtomicInteger();
+    private int threads = 1;
+    private File prefilterDir = null;
+    private int entryThreads = 1;
+    private static final int ENTRIES_PER_THREAD = 64;
+    private static final int TEXT_SIZE = 1024;
+    // the same for an isoform as for its canonical protein
+    private static final String[] SHARED_ISOFORM_COLLECTIONS =
+        {"publications", "comments", "keywords", "ecNumbers"};
+    // checkpoints for restarting a failed run, if set
+    private File checkpointFile = null;
+    private int checkpointInterval = 10000;
+    private UniprotCheckpoint resumeFrom = null;
+    private Set<String> doneFiles = new LinkedHashSet<String>();
+    // additions to the caches since the last checkpoint, see journal()
+    private UniprotCheckpoint checkpointDelta = null;
+    // writes to the item writer so far, and at the last checkpoint
+    private long writes = 0;
+    private long checkpointWrites = 0;
+    // writes already made by the failed run being resumed, skipped by this one
+    private long storedWrites = 0;
+    // item ids of the writes since the last checkpoint, 0 for writes without one
+    private int[] writeIds = new int[1024];
+    private boolean processed = false;
+    // the taxon state written to checkpoints, replaced at the start of each taxon
+    private static final String[] TAXON_MAPS = {"sequences", "proteins", "genes"};
+    private boolean parallelTrembl = false;
+    // only used by parseEntry(byte[])
+    private UniprotHandler entryParser = null;
+    private boolean incremental = false;
+    private UniprotLedger ledger = null;
+    private static final String LEDGER_FILE = "uniprot.ledger";
+    private static final String MANIFEST_FILE = "uniprot.manifest";
+    // identifier prefix -> last number used, and the last numbers used before a restart
+    private Map<String, Integer> lastItemIds = new HashMap<String, Integer>();
+    private Map<String, Integer> itemIdOffsets = new HashMap<String, Integer>();
+    // classes whose identifier prefix has been written to a checkpoint
+    private Set<String> aliasedClasses = new HashSet<String>();
+    // items cached by the superclass, kept here too so a restarted run can reuse them
+    private Map<String, String> dataSources = new HashMap<String, String>();
+    private Map<String, String> dataSets = new HashMap<String, String>();
+    private Map<String, String> organisms = new HashMap<String, String>();
 
     private boolean creategenes = true;
     private boolean creatego = false;
@@ -79,6 +137,20 @@ public class PombeUniprotConverter extends BioDirectoryConverter
     private String datasourceRefId = null;
     private static final Map<String, String> GENE_PREFIXES = new HashMap<String, String>();
     private static final String LICENCE = "http://creativecommons.org/licenses/by/4.0/";
+    protected static final String PROP_FILE = "pombe-uniprot_config.properties";
+    private static final String FEATURES = "features";
+    private static final String COMMENTS = "comments";
+    private static final String DBREFS = "dbrefs";
+    private static final String CITATIONS = "citations";
+    private static final String KEYWORDS = "keywords";
+    private static final Set<String> OPTIONAL_SUBTREES = new HashSet<String>(Arrays.asList(
+            FEATURES, COMMENTS, DBREFS, CITATIONS, KEYWORDS));
+    // isoforms are in this comment, so it's read even if comments aren't loaded
+    private static final String ISOFORM_COMMENT = "alternative products";
+    // null means load everything
+    private Set<String> subtrees = null;
+    // taxonId -> how to find the organism's gene identifiers
+    private Map<String, GenePlan> genePlans = new ConcurrentHashMap<String, GenePlan>();
 
     /**
      * Constructor
@@ -88,6 +160,38 @@ public class PombeUniprotConverter extends BioDirectoryConverter
     public PombeUniprotConverter(ItemWriter writer, Model model) {
         super(writer, model, "UniProt", "Swiss-Prot data set", LICENCE);
         OrganismRepository.getOrganismRepository();
+        readConfig();
+    }
+
+    // read config file that lists which optional parts of each entry to load
+    private void readConfig() {
+        Properties props = new Properties();
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(PROP_FILE)) {
+            if (is == null) {
+                throw new RuntimeException("Problem loading properties '" + PROP_FILE + "'");
+            }
+            props.load(is);
+        } catch (IOException e) {
+            throw new RuntimeException("Problem loading properties '" + PROP_FILE + "'", e);
+        }
+        String value = props.getProperty("entry.subtrees");
+        if (StringUtils.isNotBlank(value)) {
+            subtrees = new HashSet<String>();
+            for (String bit : StringUtils.split(value, ",")) {
+                String trimmed = bit.trim();
+                if (!OPTIONAL_SUBTREES.contains(trimmed)) {
+                    throw new IllegalArgumentException("Invalid entry.subtrees value in "
+                            + PROP_FILE + " was: " + trimmed + ", expected one of "
+                            + OPTIONAL_SUBTREES);
+                }
+                subtrees.add(trimmed);
+            }
+        }
+        LOG.info("Loading entry subtrees " + (subtrees == null ? "ALL" : subtrees));
+    }
+
+    private boolean isLoaded(String subtree) {
+        return subtrees == null || subtrees.contains(subtree);
     }
 
     static {
@@ -99,6 +203,24 @@ public class PombeUniprotConverter extends BioDirectoryConverter
      */
     @Override
     public void process(File dataDir) throws Exception {
+        if (checkpointFile != null && dedupIndexDir != null) {
+            throw new RuntimeException("Checkpoints can't be used with dedup index files");
+        }
+        if (checkpointFile != null && parallelTrembl) {
+            throw new RuntimeException("Checkpoints can't be used with parallel trembl loading");
+        }
+        if (checkpointFile != null && incremental) {
+            throw new RuntimeException("Checkpoints can't be used with incremental loading");
+        }
+        if (checkpointFile != null && entryThreads > 1) {
+            throw new RuntimeException("Checkpoints can't be used with entry threads");
+        }
+        if (sequenceRegistryFile != null) {
+            allSequences.load(sequenceRegistryFile);
+        }
+        if (checkpointFile != null) {
+            openCheckpoint();
+        }
 
         try {
             datasourceRefId = getDataSource("UniProt");
@@ -107,7 +229,19 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             e.printStackTrace();
             throw new RuntimeException(e);
         }
-        Map<String, File[]> taxonIdToFiles = parseFileNames(dataDir.listFiles());
+        File[] dataFiles = dataDir.listFiles();
+        if (prefilterDir != null && taxonIds != null) {
+            dataFiles = prefilter(dataFiles);
+        }
+        Map<String, File[]> taxonIdToFiles = parseFileNames(dataFiles);
+        File ledgerFile = new File(dataDir, LEDGER_FILE);
+        if (incremental) {
+            if (PendingFile.of(ledgerFile).exists()) {
+                LOG.warn(PendingFile.of(ledgerFile) + " was never promoted, taking the last load"
+                        + " as failed and comparing against the load before it");
+            }
+            ledger = new UniprotLedger(ledgerFile);
+        }
 
         // init id resolver
         if (rslv == null) {
@@ -115,11 +249,15 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         }
 
         if (taxonIds != null) {
-            for (String taxonId : taxonIds) {
-                if (taxonIdToFiles.get(taxonId) == null) {
-                    LOG.error("no files found for " + taxonId);
+            if (threads > 1 && checkpointFile == null) {
+                processTaxaConcurrently(taxonIdToFiles);
+            } else {
+                for (String taxonId : taxonIds) {
+                    if (taxonIdToFiles.get(taxonId) == null) {
+                        LOG.error("no files found for " + taxonId);
+                    }
+                    processFiles(taxonIdToFiles.get(taxonId));
                 }
-                processFiles(taxonIdToFiles.get(taxonId));
             }
         } else {
             // if files aren't in taxonId_sprot|trembl format, assume they are in uniprot_sprot.xml
@@ -128,7 +266,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             File[] sortedFiles = new File[2];
             for (int i = 0; i < files.length; i++) {
                 File file = files[i];
-                String filename = file.getName();
+                String filename = CompressedInput.stripSuffix(file.getName());
                 // process sprot, then trembl
                 if ("uniprot_sprot.xml".equals(filename)) {
                     sortedFiles[0] = file;
@@ -140,6 +278,87 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             }
             processFiles(sortedFiles);
         }
+        if (ledger != null) {
+            // only compared against once the load has been integrated and the pending files
+            // promoted
+            ledger.save(PendingFile.of(ledgerFile));
+            ledger.writeManifest(PendingFile.of(new File(dataDir, MANIFEST_FILE)));
+            LOG.info("Skipped " + ledger.getUnchangedCount() + " unchanged entries");
+            ledger = null;
+        }
+        if (sequenceRegistryFile != null) {
+            allSequences.save(sequenceRegistryFile);
+        }
+        if (dedupIndexDir != null) {
+            closeIndex(identifierIndex, "identifiers");
+            closeIndex(sequenceIndex, "sequences");
+        }
+        if (checkpointFile != null) {
+            // finished, the next run starts from the beginning
+            processed = true;
+            Files.deleteIfExists(checkpointFile.toPath());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The item writer only commits what it was given when it is closed, after this. So if a
+     * run with checkpoints has failed, the writes it made since the last checkpoint are
+     * recorded for the run that resumes it to skip.
+     */
+    @Override
+    public void close() throws Exception {
+        if (checkpointDelta != null && !processed) {
+            recordStoredWrites();
+        }
+        super.close();
+    }
+
+    // write the configured organisms' entries in whole release files to per-taxon files
+    private File[] prefilter(File[] dataFiles) throws IOException {
+        UniprotSplitter splitter = new UniprotSplitter(taxonIds, threads);
+        List<File> splitFiles = new ArrayList<File>();
+        for (File file : dataFiles) {
+            String filename = CompressedInput.stripSuffix(file.getName());
+            if ("uniprot_sprot.xml".equals(filename)) {
+                splitFiles.addAll(splitter.split(file, "sprot", prefilterDir));
+            } else if ("uniprot_trembl.xml".equals(filename) && loadtrembl) {
+                splitFiles.addAll(splitter.split(file, "trembl", prefilterDir));
+            }
+        }
+        if (splitFiles.isEmpty()) {
+            // already split
+            return dataFiles;
+        }
+        return splitFiles.toArray(new File[splitFiles.size()]);
+    }
+
+    // each taxon on its own thread, sprot then trembl within a taxon as before
+    private void processTaxaConcurrently(Map<String, File[]> taxonIdToFiles) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (String taxonId : taxonIds) {
+                File[] files = taxonIdToFiles.get(taxonId);
+                if (files == null) {
+                    LOG.error("no files found for " + taxonId);
+                }
+                results.add(executor.submit(() -> processFiles(files)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing UniProt files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     // process the sprot file, then the trembl file
@@ -148,25 +367,556 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             LOG.error("no data files found ");
             return;
         }
-        for (int i = 0; i <= 1; i++) {
-            File file = files[i];
-            if (file == null) {
-                continue;
+        if (checkpointFile != null && isDone(files)) {
+            LOG.info("Already processed " + Arrays.asList(files));
+            return;
+        }
+        // new organism
+        String sequenceIndexName = null;
+        DiskHashIndex taxonSequenceIndex = null;
+        try {
+            if (dedupIndexDir != null) {
+                sequenceIndexName = "sequences-" + taxonIndexCount.incrementAndGet();
+                taxonSequenceIndex = openIndex(sequenceIndexName);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        TaxonState taxonState = new TaxonState(taxonSequenceIndex);
+        if (resumeFrom != null && isResumedTaxon(files)) {
+            taxonState.restore(resumeFrom);
+        } else if (checkpointDelta != null) {
+            for (String name : TAXON_MAPS) {
+                checkpointDelta.reset(name);
+            }
+        }
+        if (parallelTrembl && files[0] != null && files[1] != null) {
+            processSprotAndTrembl(files[0], files[1], taxonState);
+        } else {
+            for (int i = 0; i <= 1; i++) {
+                File file = files[i];
+                if (file == null || doneFiles.contains(file.getPath())) {
+                    continue;
+                }
+                processFile(file, new UniprotHandler(taxonState));
+                if (checkpointDelta != null) {
+                    File next = (i == 0) ? files[1] : null;
+                    checkpointFileDone(file, (next == null) ? null : next.getPath(), taxonState);
+                }
             }
-            UniprotHandler handler = new UniprotHandler();
+        }
+        // synonyms for duplicate sequences after the last stored protein
+        try {
+            storeSynonymsAndXrefs(taxonState);
+            if (taxonSequenceIndex != null) {
+                closeIndex(taxonSequenceIndex, sequenceIndexName);
+            }
+        } catch (ObjectStoreException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // a checkpoint as soon as a file is stored, at the start of the next file of the taxon
+    private void checkpointFileDone(File file, String nextFile, TaxonState state) {
+        try {
+            storeSynonymsAndXrefs(state);
+        } catch (ObjectStoreException e) {
+            throw new RuntimeException(e);
+        }
+        state.synonymsAndXrefs.clear();
+        doneFiles.add(file.getPath());
+        writeCheckpoint(nextFile, 0, 0);
+    }
+
+    private void processFile(File file, UniprotHandler handler) {
+        try {
+            System .out.println("Processing file: " + file.getPath());
+            if (entryThreads > 1 || checkpointFile != null || ledger != null) {
+                processEntriesConcurrently(file, handler);
+            } else {
+                try (InputStream in = CompressedInput.openStream(file)) {
+                    SAXParser.parse(new InputSource(in), handler);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    // the sprot file on another thread, while the trembl file is indexed then processed
+    private void processSprotAndTrembl(File sprotFile, File tremblFile, TaxonState sprotState) {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        String sequenceIndexName = null;
+        DiskHashIndex tremblSequenceIndex = null;
+        try {
+            if (dedupIndexDir != null) {
+                sequenceIndexName = "sequences-" + taxonIndexCount.incrementAndGet();
+                tremblSequenceIndex = openIndex(sequenceIndexName);
+            }
+            Future<?> sprot = executor.submit(() -> {
+                processFile(sprotFile, new UniprotHandler(sprotState));
+                synchronized (PombeUniprotConverter.this) {
+                    sprotState.done = true;
+                }
+            });
+            SprotIndex sprotIndex = new SprotIndex(sprotFile, loadfragments);
+            LOG.info("Indexed " + sprotIndex.size() + " entries of " + sprotFile);
+            TaxonState tremblState = new TaxonState(tremblSequenceIndex, sprotState, sprotIndex);
+            UniprotHandler tremblHandler = new UniprotHandler(tremblState);
+            processFile(tremblFile, tremblHandler);
+            sprot.get();
+            synchronized (this) {
+                tremblHandler.storeDeferred();
+            }
+            storeSynonymsAndXrefs(tremblState);
+            if (tremblSequenceIndex != null) {
+                closeIndex(tremblSequenceIndex, sequenceIndexName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing " + sprotFile, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (IOException | ObjectStoreException | SAXException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void storeSynonymsAndXrefs(TaxonState state) throws ObjectStoreException {
+        for (Item item : state.synonymsAndXrefs) {
+            if (item != null) {
+                store(item);
+            }
+        }
+    }
+
+    private boolean isDone(File[] files) {
+        for (File file : files) {
+            if (file != null && !doneFiles.contains(file.getPath())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isResumedTaxon(File[] files) {
+        for (File file : files) {
+            if (file != null && file.getPath().equals(resumeFrom.getFile())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private DiskHashIndex openIndex(String name) throws IOException {
+        File file = new File(dedupIndexDir, name + ".idx");
+        // item identifiers in an index from an earlier run mean nothing to this one
+        Files.deleteIfExists(file.toPath());
+        return new DiskHashIndex(file);
+    }
+
+    private void closeIndex(DiskHashIndex index, String name) throws IOException {
+        index.close();
+        Files.delete(new File(dedupIndexDir, name + ".idx").toPath());
+    }
+
+    // split the file into entries for the workers to parse, storing parsed entries in file order
+    private void processEntriesConcurrently(File file, UniprotHandler writer)
+        throws IOException, SAXException, ObjectStoreException {
+        long startOffset = 0;
+        if (resumeFrom != null && file.getPath().equals(resumeFrom.getFile())) {
+            startOffset = resumeFrom.getOffset();
+            writer.entryCount = resumeFrom.getEntryCount();
+            resumeFrom = null;
+            LOG.info("Resuming " + file + " after " + writer.entryCount + " entries");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(entryThreads);
+        // each worker reuses one handler, and its buffers, for all its entries
+        ThreadLocal<UniprotHandler> parsers =
+            ThreadLocal.withInitial(() -> new UniprotHandler(writer.state, true));
+        Deque<Future<UniprotEntry>> pendingEntries = new ArrayDeque<Future<UniprotEntry>>();
+        // offset just after each pending entry
+        Deque<Long> pendingOffsets = new ArrayDeque<Long>();
+        try (InputStream in = CompressedInput.openStream(file)) {
+            skip(in, startOffset);
+            EntryScanner scanner = new EntryScanner(in);
+            byte[] fragment;
+            while ((fragment = scanner.next()) != null) {
+                if (ledger != null && !ledger.isChanged(fragment)) {
+                    // unchanged since the last incremental load, not even parsed
+                    continue;
+                }
+                byte[] xml = fragment;
+                if (checkpointFile != null) {
+                    // in file order on this thread, so a resumed run creates the same items in
+                    // the same order as the run it repeats
+                    pendingEntries.addLast(
+                            CompletableFuture.completedFuture(parseEntry(xml, parsers.get())));
+                } else {
+                    pendingEntries.addLast(executor.submit(() -> parseEntry(xml, parsers.get())));
+                }
+                pendingOffsets.addLast(startOffset + scanner.getPosition());
+                while (pendingEntries.size() >= entryThreads * ENTRIES_PER_THREAD) {
+                    storeNextEntry(file, writer, pendingEntries, pendingOffsets);
+                }
+            }
+            while (!pendingEntries.isEmpty()) {
+                storeNextEntry(file, writer, pendingEntries, pendingOffsets);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void storeNextEntry(File file, UniprotHandler writer,
+            Deque<Future<UniprotEntry>> pendingEntries, Deque<Long> pendingOffsets)
+        throws SAXException {
+        writer.storeParsedEntry(waitFor(pendingEntries.removeFirst()));
+        long offset = pendingOffsets.removeFirst();
+        writer.entriesSinceCheckpoint++;
+        if (checkpointFile != null && writer.entriesSinceCheckpoint >= checkpointInterval) {
+            // synonyms for duplicate sequences would otherwise wait for the next stored protein
             try {
-                System .out.println("Processing file: " + file.getPath());
-                Reader reader = new FileReader(file);
-                SAXParser.parse(new InputSource(reader), handler);
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw new RuntimeException(e);
+                for (Item item : writer.state.synonymsAndXrefs) {
+                    if (item != null) {
+                        store(item);
+                    }
+                }
+            } catch (ObjectStoreException e) {
+                throw new SAXException(e);
             }
+            writer.state.synonymsAndXrefs.clear();
+            writeCheckpoint(file.getPath(), offset, writer.entryCount);
+            writer.entriesSinceCheckpoint = 0;
+        }
+    }
+
+    private static void skip(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("File ends before the checkpoint offset " + count);
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    // the run-wide caches saved in checkpoints, by name
+    private Map<String, Map<String, String>> checkpointedMaps() {
+        Map<String, Map<String, String>> maps = new LinkedHashMap<String, Map<String, String>>();
+        maps.put("pubs", pubs);
+        maps.put("ontologies", ontologies);
+        maps.put("keywords", keywords);
+        maps.put("goterms", goterms);
+        maps.put("goEvidenceCodes", goEvidenceCodes);
+        maps.put("ecNumbers", ecNumbers);
+        maps.put("dataSources", dataSources);
+        maps.put("dataSets", dataSets);
+        maps.put("organisms", organisms);
+        return maps;
+    }
+
+    // file is null between taxa, only what was cached since the last checkpoint is written
+    private synchronized void writeCheckpoint(String file, long offset, int entryCount) {
+        checkpointDelta.setPosition(file, offset, entryCount, writes);
+        checkpointDelta.setDoneFiles(doneFiles);
+        for (Map.Entry<String, Integer> itemId : lastItemIds.entrySet()) {
+            checkpointDelta.put("itemIds", itemId.getKey(), String.valueOf(itemId.getValue()));
+        }
+        try {
+            checkpointDelta.append(checkpointFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Can't write checkpoint " + checkpointFile, e);
+        }
+        checkpointDelta = new UniprotCheckpoint();
+        checkpointWrites = writes;
+        LOG.info("Checkpoint after " + entryCount + " entries of " + file);
+    }
+
+    // record an addition to a cache in the next checkpoint
+    private synchronized void journal(String name, String key, String value) {
+        if (checkpointDelta != null) {
+            checkpointDelta.put(name, key, value);
+        }
+    }
+
+    private void openCheckpoint() throws IOException {
+        if (resumeFrom == null) {
+            if (checkpointFile.exists()) {
+                LOG.warn("Starting from the beginning, " + checkpointFile + " is from a run that"
+                        + " was killed so its items weren't committed");
+                Files.delete(checkpointFile.toPath());
+            }
+        } else {
+            // records after the last stored one are from a run that was killed
+            resumeFrom.truncate(checkpointFile);
+            restoreCheckpoint();
+        }
+        checkpointDelta = new UniprotCheckpoint();
+    }
+
+    private void restoreCheckpoint() {
+        for (Map.Entry<String, Map<String, String>> map : checkpointedMaps().entrySet()) {
+            map.getValue().putAll(resumeFrom.getMap(map.getKey()));
+        }
+        allSequences.addRefIds(resumeFrom.getMap("allSequences"));
+        identifiers.addAll(resumeFrom.getMap("identifiers").keySet());
+        // alias the classes in the order the run being resumed did
+        List<Map.Entry<String, String>> aliases =
+            new ArrayList<Map.Entry<String, String>>(resumeFrom.getMap("aliases").entrySet());
+        aliases.sort(Comparator.comparing(alias -> Integer.valueOf(alias.getValue())));
+        for (Map.Entry<String, String> alias : aliases) {
+            if (!alias.getValue().equals(super.alias(alias.getKey()))) {
+                throw new RuntimeException("Can't resume from " + checkpointFile + ", "
+                        + alias.getKey() + " was aliased " + alias.getValue() + " not "
+                        + super.alias(alias.getKey()));
+            }
+            aliasedClasses.add(alias.getKey());
+        }
+        for (Map.Entry<String, String> itemId : resumeFrom.getMap("itemIds").entrySet()) {
+            Integer lastId = Integer.valueOf(itemId.getValue());
+            itemIdOffsets.put(itemId.getKey(), lastId);
+            lastItemIds.put(itemId.getKey(), lastId);
+        }
+        doneFiles.addAll(resumeFrom.getDoneFiles());
+        writes = resumeFrom.getWrites();
+        checkpointWrites = writes;
+        storedWrites = resumeFrom.getStoredWrites();
+        for (Map.Entry<String, String> writeId : resumeFrom.getStoredIds().entrySet()) {
+            setWriteId(Long.parseLong(writeId.getKey()), Integer.valueOf(writeId.getValue()));
+        }
+        LOG.info("Resuming from " + checkpointFile + ", already processed " + doneFiles
+                + ", skipping " + (storedWrites - writes) + " writes already stored");
+    }
+
+    // the writes since the last checkpoint are committed when the item writer is closed
+    private synchronized void recordStoredWrites() throws IOException {
+        long stored = Math.max(writes, storedWrites);
+        Map<String, String> storedIds = new LinkedHashMap<String, String>();
+        for (long write = checkpointWrites + 1; write <= stored; write++) {
+            Integer id = getWriteId(write);
+            if (id != null) {
+                storedIds.put(String.valueOf(write), String.valueOf(id));
+            }
+        }
+        UniprotCheckpoint.appendStored(checkpointFile, stored, storedIds);
+        LOG.info("Recorded " + (stored - checkpointWrites) + " writes since the last checkpoint"
+                + " in " + checkpointFile);
+    }
+
+    private Integer getWriteId(long write) {
+        int index = (int) (write - checkpointWrites - 1);
+        if (index >= writeIds.length || writeIds[index] == 0) {
+            return null;
+        }
+        return writeIds[index];
+    }
+
+    private void setWriteId(long write, Integer id) {
+        int index = (int) (write - checkpointWrites - 1);
+        if (index >= writeIds.length) {
+            writeIds = Arrays.copyOf(writeIds, Math.max(writeIds.length * 2, index + 1));
+        }
+        writeIds[index] = (id == null) ? 0 : id;
+    }
+
+    private String getCachedRefId(String name, Map<String, String> refIds, String key,
+            Supplier<String> create) {
+        String refId = refIds.get(key);
+        if (refId == null) {
+            refId = create.get();
+            refIds.put(key, refId);
+            journal(name, key, refId);
+        }
+        return refId;
+    }
+
+    /**
+     * Build the entry in a fragment of a UniProt file without storing it, as the entry threads
+     * do. For benchmarks, without the id resolver process() needs.
+     *
+     * @param xml one entry element
+     * @return the entry
+     */
+    UniprotEntry parseEntry(byte[] xml) {
+        if (entryParser == null) {
+            datasourceRefId = getDataSource("UniProt");
+            entryParser = new UniprotHandler(new TaxonState(null), true);
+        }
+        return parseEntry(xml, entryParser);
+    }
+
+    private UniprotEntry parseEntry(byte[] xml, UniprotHandler handler) {
+        handler.clear();
+        try {
+            SAXParser.parse(new InputSource(new ByteArrayInputStream(xml)), handler);
+        } catch (Exception e) {
+            throw new RuntimeException("Error parsing UniProt entry", e);
+        }
+        UniprotEntry parsedEntry = handler.entry;
+        // the writer has it now
+        handler.entry = null;
+        return parsedEntry;
+    }
+
+    private UniprotEntry waitFor(Future<UniprotEntry> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while parsing UniProt entries", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Error parsing UniProt entry", e.getCause());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Synchronized as taxa may be processed concurrently.
+     */
+    @Override
+    public synchronized Item createItem(String className) {
+        Item item = super.createItem(className);
+        if (checkpointFile != null) {
+            renumber(item);
         }
-        // reset all variables here, new organism
-        sequences = new HashMap<String, Map<String, String>>();
-        genes = new HashMap<String, Item>();
-        proteins = new HashMap<String, String>();
+        return item;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The prefix of a class depends on the order classes are first created in, so with
+     * checkpoints it is recorded for a resumed run to give the class the same one.
+     */
+    @Override
+    protected synchronized String alias(String className) {
+        String alias = super.alias(className);
+        if (checkpointDelta != null && aliasedClasses.add(className)) {
+            journal("aliases", className, alias);
+        }
+        return alias;
+    }
+
+    // number identifiers on from the last ones used by the run being resumed
+    private void renumber(Item item) {
+        String identifier = item.getIdentifier();
+        int separator = identifier.lastIndexOf('_');
+        String prefix = identifier.substring(0, separator);
+        int number = Integer.parseInt(identifier.substring(separator + 1));
+        Integer offset = itemIdOffsets.get(prefix);
+        if (offset != null) {
+            number += offset;
+            item.setIdentifier(prefix + "_" + number);
+        }
+        lastItemIds.put(prefix, number);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Synchronized as taxa may be processed concurrently.
+     */
+    @Override
+    public synchronized Item createSynonym(String subjectId, String value, boolean store)
+        throws ObjectStoreException {
+        return super.createSynonym(subjectId, value, store);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Synchronized as taxa may be processed concurrently.
+     */
+    @Override
+    public synchronized Item createCrossReference(String subjectId, String value,
+            String dataSource, boolean store) throws ObjectStoreException {
+        return super.createCrossReference(subjectId, value, dataSource, store);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Cached here too so a resumed run uses the data source stored before the restart.
+     */
+    @Override
+    public synchronized String getDataSource(String name) {
+        if (dataSources == null) {
+            // called by the superclass constructor, before the fields here are set
+            return super.getDataSource(name);
+        }
+        return getCachedRefId("dataSources", dataSources, name,
+            () -> super.getDataSource(name));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Cached here too so a resumed run uses the data set stored before the restart.
+     */
+    @Override
+    public synchronized String getDataSet(String title, String dataSourceRefId,
+            String licence) {
+        if (dataSets == null) {
+            // called by the superclass constructor, before the fields here are set
+            return super.getDataSet(title, dataSourceRefId, licence);
+        }
+        return getCachedRefId("dataSets", dataSets, title,
+            () -> super.getDataSet(title, dataSourceRefId, licence));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Cached here too so a resumed run uses the organism stored before the restart.
+     */
+    @Override
+    public synchronized String getOrganism(String taxonId) {
+        return getCachedRefId("organisms", organisms, taxonId,
+            () -> super.getOrganism(taxonId));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Synchronized as taxa may be processed concurrently.
+     */
+    @Override
+    public synchronized Integer store(Item item) throws ObjectStoreException {
+        if (checkpointDelta == null) {
+            return super.store(item);
+        }
+        // made by the failed run being resumed if it's one of its writes, see close()
+        long write = writes + 1;
+        Integer id = (write <= storedWrites) ? getWriteId(write) : super.store(item);
+        writes = write;
+        setWriteId(write, id);
+        return id;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Synchronized as taxa may be processed concurrently.
+     */
+    @Override
+    public synchronized void store(ReferenceList referenceList, Integer itemId)
+        throws ObjectStoreException {
+        if (checkpointDelta == null) {
+            super.store(referenceList, itemId);
+            return;
+        }
+        long write = writes + 1;
+        if (write > storedWrites) {
+            super.store(referenceList, itemId);
+        }
+        writes = write;
+        setWriteId(write, null);
     }
 
     /**
@@ -175,7 +925,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
      *
      * UniProtFilterTask has already been run so all files are assumed to be valid.
      *
-     *  expected syntax : 7227_uniprot_sprot.xml
+     *  expected syntax : 7227_uniprot_sprot.xml, optionally .gz or .zst compressed
      *  [TAXONID]_uniprot_[SOURCE].xml
      *  SOURCE: sprot or trembl
      *
@@ -188,7 +938,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             return null;
         }
         for (File file : fileList) {
-            String[] bits = file.getName().split("_");
+            String[] bits = CompressedInput.stripSuffix(file.getName()).split("_");
             String taxonId = bits[0];
             if (bits.length != 3) {
                 LOG.info("Bad file found:  "  + file.getName()
@@ -282,6 +1032,152 @@ public class PombeUniprotConverter extends BioDirectoryConverter
     }
 
 
+    /**
+     * Set a file used to share sequence checksums with other sources, eg. pombe-genes.
+     * Sequences already created by an earlier source are created without residues.
+     *
+     * The file is read when processing starts, see setSequenceRegistryBuild().
+     *
+     * @param fileName path of the checksum file, created if it doesn't exist
+     */
+    public void setSequenceRegistry(String fileName) {
+        sequenceRegistryFile = new File(fileName);
+    }
+
+    /**
+     * Set the id of this build, needed with setSequenceRegistry(). Every source sharing the
+     * file has to be given the same id, eg. the date the build started. A file written for
+     * another build is refused, rather than taking its sequences as already stored.
+     *
+     * @param build the build id
+     */
+    public void setSequenceRegistryBuild(String build) {
+        allSequences.setBuild(build.trim());
+    }
+
+    /**
+     * Keep the maps used to skip duplicate sequences and identifiers in index files in this
+     * directory rather than on the heap, for loads too big to hold them in memory. The files
+     * are deleted at the end of the run.
+     *
+     * @param dirName directory for the index files, created if it doesn't exist
+     * @throws IOException if the index files can't be created
+     */
+    public void setDedupIndexDir(String dirName) throws IOException {
+        dedupIndexDir = new File(dirName);
+        dedupIndexDir.mkdirs();
+        identifierIndex = openIndex("identifiers");
+        sequenceIndex = openIndex("sequences");
+        allSequences.setIndex(sequenceIndex);
+    }
+
+    /**
+     * Split whole release files, uniprot_sprot.xml and uniprot_trembl.xml, into files for
+     * the organisms set by setUniprotOrganisms() before loading them, instead of needing them
+     * split beforehand. Uses the number of threads set by setThreads().
+     *
+     * @param dirName directory to write the per-organism files to
+     */
+    public void setPrefilterDir(String dirName) {
+        this.prefilterDir = new File(dirName);
+    }
+
+    /**
+     * Write a checkpoint to this file every so many entries, see setCheckpointInterval(), and
+     * as each file is finished, so a run that fails can be started again from the last
+     * checkpoint rather than the first entry. If the file exists when the run starts, the run
+     * carries on from it, skipping the writes the failed run made after its last checkpoint as
+     * its item writer committed them. The checkpoints of a run that was killed rather than
+     * failing are ignored, as it never closed its writer to commit their items. Files
+     * are read entry by entry, in order on one thread, and taxa one at a time. The file is
+     * deleted when the run finishes. Can't be used with setDedupIndexDir() or
+     * setEntryThreads().
+     *
+     * @param fileName path of the checkpoint file
+     * @throws IOException if an existing checkpoint can't be read
+     */
+    public void setCheckpointFile(String fileName) throws IOException {
+        checkpointFile = new File(fileName);
+        resumeFrom = UniprotCheckpoint.read(checkpointFile);
+    }
+
+    /**
+     * @param checkpointInterval number of entries between checkpoints, default 10000
+     */
+    public void setCheckpointInterval(String checkpointInterval) {
+        this.checkpointInterval = Math.max(1, Integer.parseInt(checkpointInterval.trim()));
+    }
+
+    /**
+     * Set the number of taxa processed at once when using split input files. Within a taxon
+     * the sprot file is still processed before the trembl file. Also the number of threads
+     * splitting each release file, see setPrefilterDir().
+     *
+     * @param threads number of taxa to process concurrently, 1 (the default) processes them
+     * in turn
+     */
+    public void setThreads(String threads) {
+        this.threads = Math.max(1, Integer.parseInt(threads.trim()));
+    }
+
+    /**
+     * Toggle loading each organism's sprot and trembl files at the same time rather than one
+     * after the other. The sprot file is first scanned for its accessions and sequence
+     * checksums, so trembl entries duplicating sprot ones are still found. Trembl entries
+     * waiting on a sprot protein or gene that isn't stored yet are kept until it is. Can't be
+     * used with setCheckpointFile().
+     *
+     * @param parallelTrembl whether or not to load sprot and trembl files together (true/false)
+     */
+    public void setParallelTrembl(String parallelTrembl) {
+        if ("true".equalsIgnoreCase(parallelTrembl)) {
+            this.parallelTrembl = true;
+        } else {
+            this.parallelTrembl = false;
+        }
+    }
+
+    /**
+     * Toggle incremental loading. Only entries added or updated since the last incremental
+     * load are converted, compared using the version and checksum of each entry saved in a
+     * uniprot.ledger file in the data directory. A uniprot.manifest file there lists the
+     * accessions of the added, updated and deleted entries. Files are read entry by entry as
+     * with setEntryThreads(). Can't be used with setCheckpointFile().
+     *
+     * Both are written as .pending files, promote them once the source has been integrated:
+     * <pre>
+     *   ./gradlew :pombe-common:promotePending -Dpending.files=D/uniprot.ledger,D/uniprot.manifest
+     * </pre>
+     * Until then the next load is compared against the last one that was
+     * promoted, so a failed load is converted again. The ledger also keeps the sequences of the
+     * stored proteins, so changed entries still become synonyms of unchanged entries with the
+     * same sequence, and aren't stored again if they have an unchanged entry's accession.
+     *
+     * The ledger doesn't know about the config, remove it to load everything again after
+     * changing which parts of entries are loaded.
+     *
+     * @param incremental whether or not to only load changed entries (true/false)
+     */
+    public void setIncremental(String incremental) {
+        if ("true".equalsIgnoreCase(incremental)) {
+            this.incremental = true;
+        } else {
+            this.incremental = false;
+        }
+    }
+
+    /**
+     * Set the number of threads parsing the entries of each file. With more than one, files are
+     * split into entries that are parsed in parallel, the entries' items are still created and
+     * stored in file order.
+     *
+     * @param entryThreads number of threads parsing entries, 1 (the default) parses each
+     * file with one SAX parser
+     */
+    public void setEntryThreads(String entryThreads) {
+        this.entryThreads = Math.max(1, Integer.parseInt(entryThreads.trim()));
+    }
+
     /**
      * Sets the list of taxonIds that should be imported if using split input files.
      *
@@ -306,25 +1202,281 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         }
     }
 
-    private void addSubspecies() {
-        Set<String> originalTaxonIds = new HashSet<String>(taxonIds);
-        for (String taxonId : originalTaxonIds) {
-            String subspecies = CONFIG.getSubspecies(taxonId);
-            if (StringUtils.isNotEmpty(subspecies)) {
-                taxonIds.add(subspecies);
-            }
+    private void addSubspecies() {
+        Set<String> originalTaxonIds = new HashSet<String>(taxonIds);
+        for (String taxonId : originalTaxonIds) {
+            String subspecies = CONFIG.getSubspecies(taxonId);
+            if (StringUtils.isNotEmpty(subspecies)) {
+                taxonIds.add(subspecies);
+            }
+        }
+    }
+
+    private GenePlan getGenePlan(String taxId) {
+        GenePlan plan = genePlans.get(taxId);
+        if (plan == null) {
+            plan = new GenePlan(taxId);
+            genePlans.put(taxId, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Finds the gene identifiers of one entry.
+     */
+    private interface GeneIdentifierExtractor
+    {
+        /**
+         * @param uniprotEntry the entry
+         * @return the identifiers, null or empty if there aren't any
+         */
+        Set<String> extract(UniprotEntry uniprotEntry);
+    }
+
+    // which gene fields to set for an organism and where in the entry to find them, read from
+    // the config once rather than for every entry
+    private static final class GenePlan
+    {
+        // which gene.identifier field has to be unique
+        private final String uniqueField;
+        private final GeneIdentifierExtractor uniqueExtractor;
+        // for this organism, set the following gene fields
+        private final String[] otherFields;
+        private final GeneIdentifierExtractor[] otherExtractors;
+        // prepended to identifiers, eg. RGD:, or null
+        private final String prefix;
+        // dbReference types the extractors read
+        private final Set<String> dbrefTypes = new HashSet<String>();
+
+        private GenePlan(String taxId) {
+            String field = CONFIG.getUniqueIdentifier(taxId);
+            if (field == null) {
+                field = CONFIG.getUniqueIdentifier("default");
+            }
+            uniqueField = field;
+            uniqueExtractor = compile(taxId, uniqueField);
+            Set<String> geneFields = CONFIG.getGeneIdentifierFields(taxId);
+            if (geneFields == null) {
+                geneFields = CONFIG.getGeneIdentifierFields("default");
+            }
+            otherFields = geneFields.toArray(new String[geneFields.size()]);
+            otherExtractors = new GeneIdentifierExtractor[otherFields.length];
+            for (int i = 0; i < otherFields.length; i++) {
+                otherExtractors[i] = compile(taxId, otherFields[i]);
+            }
+            prefix = GENE_PREFIXES.get(taxId);
+        }
+
+        private GeneIdentifierExtractor compile(String taxId, String identifierField) {
+            // which part of XML file to get values (eg. FlyBase, ORF, etc)
+            String method = CONFIG.getIdentifierMethod(taxId, identifierField);
+            if (method == null) {
+                // use default set in config file, if this organism isn't configured
+                method = CONFIG.getIdentifierMethod("default", identifierField);
+            }
+            // what value to use with method, eg. "FlyBase" or "ORF"
+            String configValue = CONFIG.getIdentifierValue(taxId, identifierField);
+            final String value = (configValue == null)
+                    ? CONFIG.getIdentifierValue("default", identifierField) : configValue;
+            if (method == null || value == null) {
+                // an error once an entry needs this field, as when read for every entry
+                return uniprotEntry -> {
+                    throw new RuntimeException("error processing line in config file for organism "
+                            + taxId);
+                };
+            }
+            if ("name".equals(method)) {
+                return uniprotEntry -> getByName(uniprotEntry, taxId, value);
+            } else if ("gene-designation".equals(method)
+                    || ("dbref".equals(method) && "Ensembl".equals(value))) {
+                // Ensembl dbrefs, see #2122
+                dbrefTypes.add(value);
+                return uniprotEntry -> new HashSet<String>(uniprotEntry.getGeneDesignation(value));
+            } else if ("dbref".equals(method)) {
+                dbrefTypes.add(value);
+                return uniprotEntry -> getByDbref(uniprotEntry, value);
+            }
+            return uniprotEntry -> {
+                LOG.error("error processing config for organism " + taxId);
+                return new HashSet<String>();
+            };
+        }
+
+        private static Set<String> getByName(UniprotEntry uniprotEntry, String taxId,
+                String value) {
+            if (uniprotEntry.getGeneNames() == null || uniprotEntry.getGeneNames().isEmpty()) {
+                LOG.error("No gene names for " + taxId + ". protein accession:"
+                        + uniprotEntry.getPrimaryAccession());
+                return null;
+            }
+            return uniprotEntry.getGeneNames().get(value);
+        }
+
+        private static Set<String> getByDbref(UniprotEntry uniprotEntry, String value) {
+            Map<String, Set<String>> dbrefs = uniprotEntry.getDbrefs();
+            Set<String> dbrefValues = (dbrefs == null) ? null : dbrefs.get(value);
+            if (dbrefValues == null || dbrefValues.isEmpty()) {
+                LOG.error("no " + value + " identifier found for gene attached to protein: "
+                        + uniprotEntry.getPrimaryAccession());
+                return null;
+            }
+            return dbrefValues;
+        }
+    }
+
+    // per organism, shared by the sprot and trembl handlers of one taxon unless they run at
+    // the same time, see setParallelTrembl()
+    private static class TaxonState
+    {
+        // for genes restored from a checkpoint, only their identifiers are needed
+        private static final ItemFactory ITEM_FACTORY = new ItemFactory();
+        // created but not yet stored, repeats were already dropped by the superclass
+        private List<Item> synonymsAndXrefs = new ArrayList<Item>();
+        // taxonId -> [md5Checksum -> stored protein identifier]
+        private Map<String, Map<String, String>> sequences =
+            new HashMap<String, Map<String, String>>();
+        // replaces sequences if set, keys are taxonId:md5Checksum
+        private final DiskHashIndex sequenceIndex;
+        private Map<String, Item> genes = new HashMap<String, Item>();
+        // canonical accession -> protein identifier, for isoforms
+        private AccessionMap<String> proteins = new AccessionMap<String>();
+        // for trembl loaded alongside sprot, the sprot state and what its file holds
+        private final TaxonState sprot;
+        private final SprotIndex sprotIndex;
+        // set once the sprot file has been stored
+        private boolean done = false;
+        // genes created by trembl entries that sprot entries might fill in, identifier -> gene
+        private Map<String, PendingGene> pendingGenes = new LinkedHashMap<String, PendingGene>();
+        // trembl entries duplicating sprot proteins that weren't stored yet
+        private List<UniprotEntry> deferredEntries = new ArrayList<UniprotEntry>();
+
+        TaxonState(DiskHashIndex sequenceIndex) {
+            this.sequenceIndex = sequenceIndex;
+            this.sprot = null;
+            this.sprotIndex = null;
+        }
+
+        // trembl, sharing the sprot state's genes
+        TaxonState(DiskHashIndex sequenceIndex, TaxonState sprot, SprotIndex sprotIndex) {
+            this.sequenceIndex = sequenceIndex;
+            this.sprot = sprot;
+            this.sprotIndex = sprotIndex;
+            this.genes = sprot.genes;
+            this.pendingGenes = sprot.pendingGenes;
+        }
+
+        // true for trembl while the sprot file is still being stored
+        boolean isWaitingForSprot() {
+            return sprot != null && !sprot.done;
+        }
+
+        // false if a protein with this sequence was already seen
+        boolean addSeenSequence(String taxonId, String md5checksum, String proteinIdentifier) {
+            if (sequenceIndex != null) {
+                try {
+                    return sequenceIndex.putIfAbsent(taxonId + ":" + md5checksum,
+                            proteinIdentifier) == null;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            Map<String, String> orgSequences = sequences.get(taxonId);
+            if (orgSequences == null) {
+                orgSequences = new HashMap<String, String>();
+                sequences.put(taxonId, orgSequences);
+            }
+            if (!orgSequences.containsKey(md5checksum)) {
+                orgSequences.put(md5checksum, proteinIdentifier);
+                return true;
+            }
+            return false;
+        }
+
+        // stored protein with this sequence, or null
+        String getSeenProtein(String taxonId, String md5checksum) {
+            if (sprot != null) {
+                // sprot proteins first, as if the sprot file had been stored before this one
+                String proteinRefId = sprot.getSeenProtein(taxonId, md5checksum);
+                if (proteinRefId != null) {
+                    return proteinRefId;
+                }
+            }
+            if (sequenceIndex != null) {
+                return sequenceIndex.get(taxonId + ":" + md5checksum);
+            }
+            Map<String, String> orgSequences = sequences.get(taxonId);
+            return (orgSequences == null) ? null : orgSequences.get(md5checksum);
+        }
+
+        void restore(UniprotCheckpoint checkpoint) {
+            for (Map.Entry<String, String> seen : checkpoint.getMap("sequences").entrySet()) {
+                String key = seen.getKey();
+                int separator = key.indexOf(':');
+                addSeenSequence(key.substring(0, separator), key.substring(separator + 1),
+                        seen.getValue());
+            }
+            proteins.putAll(checkpoint.getMap("proteins"));
+            // genes are already stored, only their identifiers are needed
+            for (Map.Entry<String, String> gene : checkpoint.getMap("genes").entrySet()) {
+                genes.put(gene.getKey(), ITEM_FACTORY.makeItem(gene.getValue(), "Gene", ""));
+            }
+        }
+    }
+
+    // a gene created for a trembl entry, filled in from that entry unless a sprot entry has it
+    private static final class PendingGene
+    {
+        private final Item gene;
+        private final UniprotEntry uniprotEntry;
+        private final boolean hasMultipleGenes;
+
+        private PendingGene(Item gene, UniprotEntry uniprotEntry, boolean hasMultipleGenes) {
+            this.gene = gene;
+            this.uniprotEntry = uniprotEntry;
+            this.hasMultipleGenes = hasMultipleGenes;
         }
     }
 
     /* converts the XML into UniProt entry objects.  run once per file */
     private class UniprotHandler extends DefaultHandler
     {
+        private final TaxonState state;
+        // only build the entry, the writer stores it
+        private final boolean parseOnly;
         private UniprotEntry entry;
-        private Stack<String> stack = new Stack<String>();
+        private UniprotElements.Path path = new UniprotElements.Path();
         private String attName = null;
-        private StringBuffer attValue = null;
+        // text of the current element, the same buffer for every element
+        private char[] text = new char[TEXT_SIZE];
+        private int textLength = 0;
+        // sequences lose their whitespace as the text is read, see UniprotSequence
+        private boolean residues = false;
         private int entryCount = 0;
-        private DiseaseHolder disease = null;
+        private int entriesSinceCheckpoint = 0;
+        // depth inside an element whose subtree isn't loaded, 0 if not in one
+        private int skipDepth = 0;
+        // reused for every disease comment
+        private final DiseaseHolder disease = new DiseaseHolder();
+
+        UniprotHandler(TaxonState state) {
+            this(state, false);
+        }
+
+        UniprotHandler(TaxonState state, boolean parseOnly) {
+            this.state = state;
+            this.parseOnly = parseOnly;
+        }
+
+        // ready to parse another entry, keeping the buffers
+        void clear() {
+            entry = null;
+            path.clear();
+            attName = null;
+            textLength = 0;
+            residues = false;
+            skipDepth = 0;
+            disease.clear();
+        }
 
         /**
          * {@inheritDoc}
@@ -332,46 +1484,219 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         @Override
         public void startElement(String uri, String localName, String qName, Attributes attrs)
             throws SAXException {
-
-            String previousQName = null;
-            if (!stack.isEmpty()) {
-                previousQName = stack.peek();
+            if (skipDepth > 0) {
+                skipDepth++;
+                return;
             }
+            int element = UniprotElements.id(qName);
+            int parent = path.parent();
             attName = null;
-            if ("entry".equals(qName)) {
-                entry = new UniprotEntry();
-                String dataSetTitle = getAttrValue(attrs, "dataset") + " data set";
-                entry.setDatasetRefId(getDataSet(dataSetTitle, datasourceRefId, LICENCE));
-            } else if ("fullName".equals(qName) && stack.search("protein") == 2
-                    &&  ("recommendedName".equals(previousQName)
-                            || "submittedName".equals(previousQName))) {
-                attName = "proteinName";
-            } else if (("fullName".equals(qName) || "shortName".equals(qName))
-                    && stack.search("protein") == 2
-                    && ("alternativeName".equals(previousQName)
-                            || "recommendedName".equals(previousQName)
-                            || "submittedName".equals(previousQName))) {
-                attName = "synonym";
-            } else if ("fullName".equals(qName)
-                    && "recommendedName".equals(previousQName)
-                    && stack.search("component") == 2) {
-                attName = "component";
-            } else if ("name".equals(qName) && "entry".equals(previousQName)) {
-                attName = "primaryIdentifier";
-            } else if ("ecNumber".equals(qName)) {
-                attName = "ecNumber";
-            } else if ("accession".equals(qName)) {
-                attName = "value";
-            } else if ("dbReference".equals(qName) && "organism".equals(previousQName)) {
+            if (parent == UniprotElements.ENTRY && isSkipped(element, attrs)) {
+                // nothing in the subtree is built and none of its text is kept
+                skipDepth = 1;
+                return;
+            }
+            residues = false;
+            switch (element) {
+                case UniprotElements.ENTRY:
+                    entry = new UniprotEntry();
+                    String dataSetTitle = getAttrValue(attrs, "dataset") + " data set";
+                    synchronized (PombeUniprotConverter.this) {
+                        entry.setDatasetRefId(getDataSet(dataSetTitle, datasourceRefId, LICENCE));
+                    }
+                    break;
+                case UniprotElements.FULL_NAME:
+                    if (path.grandparent() == UniprotElements.PROTEIN
+                            && (parent == UniprotElements.RECOMMENDED_NAME
+                                    || parent == UniprotElements.SUBMITTED_NAME)) {
+                        attName = "proteinName";
+                    } else if (path.grandparent() == UniprotElements.PROTEIN
+                            && parent == UniprotElements.ALTERNATIVE_NAME) {
+                        attName = "synonym";
+                    } else if (parent == UniprotElements.RECOMMENDED_NAME
+                            && path.grandparent() == UniprotElements.COMPONENT) {
+                        attName = "component";
+                    }
+                    break;
+                case UniprotElements.SHORT_NAME:
+                    if (path.grandparent() == UniprotElements.PROTEIN
+                            && (parent == UniprotElements.ALTERNATIVE_NAME
+                                    || parent == UniprotElements.RECOMMENDED_NAME
+                                    || parent == UniprotElements.SUBMITTED_NAME)) {
+                        attName = "synonym";
+                    }
+                    break;
+                case UniprotElements.NAME:
+                    if (parent == UniprotElements.ENTRY) {
+                        attName = "primaryIdentifier";
+                    } else if (parent == UniprotElements.ISOFORM) {
+                        attName = "isoformname";
+                    } else if (parent == UniprotElements.GENE) {
+                        attName = getAttrValue(attrs, "type");
+                    } else if (parent == UniprotElements.DISEASE) {
+                        attName = "disease";
+                    }
+                    break;
+                case UniprotElements.EC_NUMBER:
+                    attName = "ecNumber";
+                    break;
+                case UniprotElements.ACCESSION:
+                    attName = "value";
+                    break;
+                case UniprotElements.DB_REFERENCE:
+                    startDbReference(parent, attrs);
+                    break;
+                case UniprotElements.ID:
+                    if (parent == UniprotElements.ISOFORM) {
+                        // TODO only use the first isoform
+                        // how does xml parser work for multiple isoforms?
+                        attName = "isoform";
+                    }
+                    break;
+                case UniprotElements.SEQUENCE:
+                    startSequence(parent, attrs);
+                    break;
+                case UniprotElements.FEATURE:
+                    if (getAttrValue(attrs, "type") != null) {
+                        Item feature = getFeature(getAttrValue(attrs, "type"), getAttrValue(attrs,
+                            "description"), getAttrValue(attrs, "status"));
+                        entry.addFeature(feature);
+                    }
+                    break;
+                case UniprotElements.BEGIN:
+                case UniprotElements.END:
+                    if (entry.processingFeature() && getAttrValue(attrs, "position") != null) {
+                        entry.addFeatureLocation(qName, getAttrValue(attrs, "position"));
+                    }
+                    break;
+                case UniprotElements.POSITION:
+                    if (entry.processingFeature() && getAttrValue(attrs, "position") != null) {
+                        entry.addFeatureLocation("begin", getAttrValue(attrs, "position"));
+                        entry.addFeatureLocation("end", getAttrValue(attrs, "position"));
+                    }
+                    break;
+                case UniprotElements.COMMENT:
+                    if (StringUtils.isNotEmpty(getAttrValue(attrs, "type"))) {
+                        entry.setCommentType(getAttrValue(attrs, "type"));
+                    } else {
+                        // set temporary holder variables to null
+                        entry.reset();
+                    }
+                    break;
+                case UniprotElements.TEXT:
+                    if (parent == UniprotElements.COMMENT) {
+                        attName = "text";
+                        String commentEvidence = getAttrValue(attrs, "evidence");
+                        if (StringUtils.isNotEmpty(commentEvidence)) {
+                            entry.setCommentEvidence(commentEvidence);
+                        }
+                    }
+                    break;
+                case UniprotElements.KEYWORD:
+                    attName = "keyword";
+                    break;
+                case UniprotElements.PROPERTY:
+                    if (parent == UniprotElements.DB_REFERENCE) {
+                        String type = getAttrValue(attrs, "type");
+                        String geneDesignation = CONFIG.getGeneDesignation(entry.getTaxonId());
+                        if (type.equals(geneDesignation)) {
+                            entry.addGeneDesignation(getAttrValue(attrs, "value"));
+                        } else if ("evidence".equals(type)) {
+                            entry.addGOEvidence(entry.getDbref(), getAttrValue(attrs, "value"));
+                        }
+                    }
+                    break;
+                case UniprotElements.EVIDENCE:
+                    if (parent == UniprotElements.ENTRY) {
+                        String evidenceCode = getAttrValue(attrs, "key");
+                        String pubmedString = getAttrValue(attrs, "attribute");
+                        if (StringUtils.isNotEmpty(evidenceCode)
+                                && StringUtils.isNotEmpty(pubmedString)) {
+                            String pubRefId = getEvidence(pubmedString);
+                            entry.addPubEvidence(evidenceCode, pubRefId);
+                        }
+                    }
+                    break;
+                case UniprotElements.ACRONYM:
+                case UniprotElements.DESCRIPTION:
+                    if (parent == UniprotElements.DISEASE) {
+                        attName = "disease";
+                    }
+                    break;
+                case UniprotElements.SCOPE:
+                    if (parent == UniprotElements.REFERENCE) {
+                        attName = "scope";
+                    }
+                    break;
+                case UniprotElements.ISOFORM:
+                case UniprotElements.GENE:
+                case UniprotElements.LOWER_CASE_DB_REFERENCE:
+                    // set temporary holder variables to null
+                    entry.reset();
+                    break;
+                default:
+                    break;
+            }
+            super.startElement(uri, localName, qName, attrs);
+            path.push(element);
+            textLength = 0;
+        }
+
+        // whether to skip this child of an entry, see entry.subtrees in the config file
+        private boolean isSkipped(int element, Attributes attrs) {
+            switch (element) {
+                case UniprotElements.FEATURE:
+                    if (!isLoaded(FEATURES)) {
+                        return true;
+                    }
+                    // the features that wouldn't be stored
+                    List<String> featureTypes = CONFIG.getFeatureTypes();
+                    return !featureTypes.isEmpty()
+                        && !featureTypes.contains(getAttrValue(attrs, "type"));
+                case UniprotElements.COMMENT:
+                    return !isLoaded(COMMENTS)
+                        && !ISOFORM_COMMENT.equals(getAttrValue(attrs, "type"));
+                case UniprotElements.DB_REFERENCE:
+                    return !isLoaded(DBREFS) && entry.getTaxonId() != null
+                        && !isUsedDbref(entry.getTaxonId(), getAttrValue(attrs, "type"));
+                case UniprotElements.REFERENCE:
+                    return !isLoaded(CITATIONS);
+                case UniprotElements.KEYWORD:
+                    return !isLoaded(KEYWORDS);
+                default:
+                    return false;
+            }
+        }
+
+        private boolean isUsedDbref(String taxId, String type) {
+            List<String> crossReferences = CONFIG.getCrossReferences();
+            if (crossReferences.isEmpty()) {
+                // all are cross references
+                return true;
+            }
+            return crossReferences.contains(type) || (creatego && "GO".equals(type))
+                || getGenePlan(taxId).dbrefTypes.contains(type);
+        }
+
+        private void startDbReference(int parent, Attributes attrs) throws SAXException {
+            if (parent == UniprotElements.ORGANISM) {
                 //we will not load the organism set in the uniprot file
                 entry.setTaxonId(POMBE_TAXON_ID);
-            } else if ("name".equals(qName)  && "isoform".equals(previousQName)) {
-                attName = "isoformname";
-            } else if ("id".equals(qName)  && "isoform".equals(previousQName)) {
-                // TODO only use the first isoform
-                // how does xml parser work for multiple isoforms?
-                attName = "isoform";
-            } else if ("sequence".equals(qName)  && "isoform".equals(previousQName)) {
+            } else if (parent == UniprotElements.CITATION
+                    && "PubMed".equals(getAttrValue(attrs, "type"))) {
+                entry.addPub(getPub(getAttrValue(attrs, "id")));
+            } else if (parent == UniprotElements.ENTRY) {
+                entry.addDbref(getAttrValue(attrs, "type"), getAttrValue(attrs, "id"));
+            } else if (parent == UniprotElements.DISEASE) {
+                // <dbReference type="MIM" id="601665"/>
+                String type = getAttrValue(attrs, "type");
+                String id = getAttrValue(attrs, "id");
+                disease.setIdentifier(type + ":" + id);
+            }
+        }
+
+        private void startSequence(int parent, Attributes attrs) {
+            if (parent == UniprotElements.ISOFORM) {
                 String sequenceType = getAttrValue(attrs, "type");
                 // ignore "external" types
                 if ("displayed".equals(sequenceType)) {
@@ -379,87 +1704,23 @@ public class PombeUniprotConverter extends BioDirectoryConverter
                 } else if ("described".equals(sequenceType)) {
                     entry.addIsoform(entry.getAttribute());
                 }
-            } else if ("sequence".equals(qName)) {
-                String strLength = getAttrValue(attrs, "length");
-                String strMass = getAttrValue(attrs, "mass");
-                if (strLength != null) {
-                    entry.setLength(strLength);
-                    attName = "residues";
-                }
-                if (strMass != null) {
-                    entry.setMolecularWeight(strMass);
-                }
-                boolean isFragment = false;
-                if (getAttrValue(attrs, "fragment") != null) {
-                    isFragment = true;
-                }
-                entry.setFragment(isFragment);
-            } else if ("feature".equals(qName) && getAttrValue(attrs, "type") != null) {
-                Item feature = getFeature(getAttrValue(attrs, "type"), getAttrValue(attrs,
-                    "description"), getAttrValue(attrs, "status"));
-                entry.addFeature(feature);
-            } else if (("begin".equals(qName) || "end".equals(qName))
-                    && entry.processingFeature()
-                    && getAttrValue(attrs, "position") != null) {
-                entry.addFeatureLocation(qName, getAttrValue(attrs, "position"));
-            } else if ("position".equals(qName) && entry.processingFeature()
-                    && getAttrValue(attrs, "position") != null) {
-                entry.addFeatureLocation("begin", getAttrValue(attrs, "position"));
-                entry.addFeatureLocation("end", getAttrValue(attrs, "position"));
-            } else if ("dbReference".equals(qName) && "citation".equals(previousQName)
-                    && "PubMed".equals(getAttrValue(attrs, "type"))) {
-                entry.addPub(getPub(getAttrValue(attrs, "id")));
-            } else if ("comment".equals(qName)
-                    && StringUtils.isNotEmpty(getAttrValue(attrs, "type"))) {
-                entry.setCommentType(getAttrValue(attrs, "type"));
-            } else if ("text".equals(qName) && "comment".equals(previousQName)) {
-                attName = "text";
-                String commentEvidence = getAttrValue(attrs, "evidence");
-                if (StringUtils.isNotEmpty(commentEvidence)) {
-                    entry.setCommentEvidence(commentEvidence);
-                }
-            } else if ("keyword".equals(qName)) {
-                attName = "keyword";
-            } else if ("dbReference".equals(qName) && "entry".equals(previousQName)) {
-                entry.addDbref(getAttrValue(attrs, "type"), getAttrValue(attrs, "id"));
-            } else if ("property".equals(qName) && "dbReference".equals(previousQName)) {
-                String type = getAttrValue(attrs, "type");
-                String geneDesignation = CONFIG.getGeneDesignation(entry.getTaxonId());
-                if (type.equals(geneDesignation)) {
-                    entry.addGeneDesignation(getAttrValue(attrs, "value"));
-                } else if ("evidence".equals(type)) {
-                    entry.addGOEvidence(entry.getDbref(), getAttrValue(attrs, "value"));
-                }
-            } else if ("name".equals(qName) && "gene".equals(previousQName)) {
-                attName = getAttrValue(attrs, "type");
-            } else if ("evidence".equals(qName) && "entry".equals(previousQName)) {
-                String evidenceCode = getAttrValue(attrs, "key");
-                String pubmedString = getAttrValue(attrs, "attribute");
-                if (StringUtils.isNotEmpty(evidenceCode) && StringUtils.isNotEmpty(pubmedString)) {
-                    String pubRefId = getEvidence(pubmedString);
-                    entry.addPubEvidence(evidenceCode, pubRefId);
-                }
-            } else if ("disease".equals(previousQName) && ("name".equals(qName)
-                    || "acronym".equals(qName) || "description".equals(qName))) {
-                attName = "disease";
-            // <dbReference type="MIM" id="601665"/>
-            } else if ("dbReference".equals(qName) && "disease".equals(previousQName)) {
-                if (disease == null) {
-                    disease = new DiseaseHolder();
-                }
-                String type = getAttrValue(attrs, "type");
-                String id = getAttrValue(attrs, "id");
-                disease.setIdentifier(type + ":" + id);
-            } else if ("scope".equals(qName) && "reference".equals(previousQName)) {
-                attName = "scope";
-            } else if ("dbreference".equals(qName) || "comment".equals(qName)
-                    || "isoform".equals(qName) || "gene".equals(qName)) {
-                // set temporary holder variables to null
-                entry.reset();
+                return;
             }
-            super.startElement(uri, localName, qName, attrs);
-            stack.push(qName);
-            attValue = new StringBuffer();
+            String strLength = getAttrValue(attrs, "length");
+            String strMass = getAttrValue(attrs, "mass");
+            if (strLength != null) {
+                entry.setLength(strLength);
+                attName = "residues";
+                residues = true;
+            }
+            if (strMass != null) {
+                entry.setMolecularWeight(strMass);
+            }
+            boolean isFragment = false;
+            if (getAttrValue(attrs, "fragment") != null) {
+                isFragment = true;
+            }
+            entry.setFragment(isFragment);
         }
 
         private String parseTaxonId(String taxonId) {
@@ -476,178 +1737,287 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         @Override
         public void endElement(String uri, String localName, String qName)
             throws SAXException {
-            super.endElement(uri, localName, qName);
-            stack.pop();
-            if (attName == null && attValue.toString() == null) {
+            if (skipDepth > 0) {
+                skipDepth--;
                 return;
             }
+            super.endElement(uri, localName, qName);
+            int element = UniprotElements.id(qName);
+            path.pop();
+            int parent = path.parent();
+
+            // attName is still set from the last start tag, when closing its parents too
+            if (element == UniprotElements.SEQUENCE) {
+                entry.setSequence(text());
+            } else if ("proteinName".equals(attName)) {
+                entry.setName(text());
+            } else if ("synonym".equals(attName)) {
+                entry.addProteinName(text());
+            } else if ("ecNumber".equals(attName)) {
+                entry.addECNumber(text());
+            } else if (element == UniprotElements.NAME && parent == UniprotElements.GENE) {
+                entry.addGeneName(attName, text());
+            } else if (element == UniprotElements.KEYWORD) {
+                entry.addKeyword(getKeyword(text()));
+            } else if ("primaryIdentifier".equals(attName)) {
+                entry.setPrimaryIdentifier(text());
+            } else {
+                endElement(element, parent);
+            }
+        }
 
-            String previousQName = null;
-            if (!stack.isEmpty()) {
-                previousQName = stack.peek();
-            }
-
-            if ("sequence".equals(qName)) {
-                entry.setSequence(attValue.toString().replaceAll("\n", ""));
-            } else if (StringUtils.isNotEmpty(attName) && "proteinName".equals(attName)) {
-                entry.setName(attValue.toString());
-            } else if (StringUtils.isNotEmpty(attName) && "synonym".equals(attName)) {
-                entry.addProteinName(attValue.toString());
-            } else if (StringUtils.isNotEmpty(attName) && "ecNumber".equals(attName)) {
-                entry.addECNumber(attValue.toString());
-            } else if ("name".equals(qName) && "gene".equals(previousQName)) {
-                entry.addGeneName(attName, attValue.toString());
-            } else if ("keyword".equals(qName)) {
-                entry.addKeyword(getKeyword(attValue.toString()));
-            } else if (StringUtils.isNotEmpty(attName)
-                    && "primaryIdentifier".equals(attName)) {
-                entry.setPrimaryIdentifier(attValue.toString());
-            } else if ("accession".equals(qName)) {
-                String accession = attValue.toString();
-                entry.addAccession(accession);
-                if (accession.equals(entry.getPrimaryAccession())) {
-                    checkUniqueIdentifier(entry, accession);
-                }
-            } else if (StringUtils.isNotEmpty(attName) && "disease".equals(attName)
-                    && ("name".equals(qName) || "acronym".equals(qName)
-                            || "description".equals(qName))
-                    && "disease".equals(previousQName)) {
-                if (disease == null) {
-                    disease = new DiseaseHolder();
-                }
-                if ("name".equals(qName)) {
-                    disease.setDisease("name", attValue.toString());
-                } else if ("description".equals(qName)) {
-                    disease.setDisease("description", attValue.toString());
-                } else if ("acronym".equals(qName)) {
-                    disease.setDisease("acronym", attValue.toString());
-                }
-            } else if ("id".equals(qName) && "isoform".equals(previousQName)) {
-                String accession = attValue.toString();
-
-                // 119 isoforms have commas in their IDs
-                if (accession.contains(",")) {
-                    String[] accessions = accession.split("[, ]+");
-                    accession = accessions[0];
-                    for (int i = 1; i < accessions.length; i++) {
-                        entry.addIsoformSynonym(accessions[i]);
+        private void endElement(int element, int parent) throws SAXException {
+            switch (element) {
+                case UniprotElements.ACCESSION:
+                    String accession = text();
+                    entry.addAccession(accession);
+                    // in file order, so left to the writer when parsing entries in parallel
+                    if (!parseOnly && accession.equals(entry.getPrimaryAccession())) {
+                        checkPrimaryAccession(entry, accession);
                     }
-                }
+                    break;
+                case UniprotElements.NAME:
+                case UniprotElements.ACRONYM:
+                case UniprotElements.DESCRIPTION:
+                    if ("disease".equals(attName) && parent == UniprotElements.DISEASE) {
+                        if (element == UniprotElements.NAME) {
+                            disease.setDisease("name", text());
+                        } else if (element == UniprotElements.DESCRIPTION) {
+                            disease.setDisease("description", text());
+                        } else {
+                            disease.setDisease("acronym", text());
+                        }
+                    } else if (element == UniprotElements.NAME
+                            && parent == UniprotElements.ISOFORM) {
+                        String isoformName = text();
+                        if (!isoformName.matches("[0-9]+")) {
+                            entry.addIsoformSynonym(isoformName);
+                        }
+                    }
+                    break;
+                case UniprotElements.ID:
+                    if (parent == UniprotElements.ISOFORM) {
+                        endIsoformId();
+                    }
+                    break;
+                case UniprotElements.COMMENT:
+                    // on closing a comment, make sure the disease holder is empty
+                    disease.clear();
+                    break;
+                case UniprotElements.SCOPE:
+                    String scope = text();
+                    // the publication we just processed was RETRACTED, so we don't want to load
+                    if (scope.contains("RETRACTED")) {
+                        entry.deleteLastPub();
+                    }
+                    break;
+                case UniprotElements.ENTRY:
+                    if (!parseOnly) {
+                        storeEntry(entry);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
 
-                // attribute should be empty, unless isoform has two <id>s
-                if (entry.getAttribute() == null) {
-                    entry.addAttribute(accession);
-                } else {
-                    // second <id> value is ignored and added as a synonym
-                    entry.addIsoformSynonym(accession);
-                }
-            } else if ("comment".equals(qName)) {
-                // on closing a comment, make sure the disease holder is empty
-                disease = null;
-            } else if ("scope".equals(qName)) {
-                String scope = attValue.toString();
-                // the publication we just processed was RETRACTED, so we don't want to load
-                if (scope.contains("RETRACTED")) {
-                    entry.deleteLastPub();
-                }
-            } else if ("name".equals(qName) && "isoform".equals(previousQName)) {
-                if (!attValue.toString().matches("[0-9]+")) {
-                    entry.addIsoformSynonym(attValue.toString());
+        private void endIsoformId() {
+            String accession = text();
+
+            // 119 isoforms have commas in their IDs
+            if (accession.contains(",")) {
+                String[] accessions = accession.split("[, ]+");
+                accession = accessions[0];
+                for (int i = 1; i < accessions.length; i++) {
+                    entry.addIsoformSynonym(accessions[i]);
                 }
-            } else if ("entry".equals(qName)) {
+            }
+
+            // attribute should be empty, unless isoform has two <id>s
+            if (entry.getAttribute() == null) {
+                entry.addAttribute(accession);
+            } else {
+                // second <id> value is ignored and added as a synonym
+                entry.addIsoformSynonym(accession);
+            }
+        }
+
+        // an entry parsed by a worker, ie. without its primary accession checked
+        private void storeParsedEntry(UniprotEntry parsedEntry) throws SAXException {
+            checkPrimaryAccession(parsedEntry, parsedEntry.getPrimaryAccession());
+            storeEntry(parsedEntry);
+        }
+
+        // a trembl entry with a sprot entry's accession is a duplicate, even before the sprot
+        // entry is stored
+        private void checkPrimaryAccession(UniprotEntry uniprotEntry, String accession) {
+            if (state.sprotIndex != null && state.sprotIndex.hasAccession(accession)) {
+                LOG.error("not assigning duplicate identifier:  " + accession);
+                uniprotEntry.setDuplicate(true);
+                return;
+            }
+            checkUniqueIdentifier(uniprotEntry, accession);
+        }
+
+        private void storeEntry(UniprotEntry uniprotEntry) throws SAXException {
+            // parsing runs concurrently, creating the entry's items one entry at a time
+            synchronized (PombeUniprotConverter.this) {
                 try {
-                    processCommentEvidence(entry);
-                    List<UniprotEntry> isoforms = processEntry(entry);
-                    if (isoforms != null) {
-                        for (UniprotEntry isoform : isoforms) {
-                            processEntry(isoform);
-                        }
+                    if (state.sprot != null && state.sprot.done) {
+                        storeDeferred();
+                    }
+                    if (isDeferred(uniprotEntry)) {
+                        // a synonym of the sprot protein, once that's stored
+                        state.deferredEntries.add(uniprotEntry);
+                        return;
                     }
+                    storeItems(uniprotEntry);
                 } catch (ObjectStoreException e) {
                     throw new SAXException(e);
                 }
             }
         }
 
+        private void storeItems(UniprotEntry uniprotEntry)
+            throws SAXException, ObjectStoreException {
+            processCommentEvidence(uniprotEntry);
+            Item protein = processEntry(uniprotEntry, null);
+            // one isoform at a time, each dropped once its items are stored
+            if (protein != null) {
+                for (String isoformAccession : uniprotEntry.getIsoforms()) {
+                    processEntry(uniprotEntry.createIsoformEntry(isoformAccession), protein);
+                }
+            }
+        }
+
+        // stored protein with this sequence, or null
+        private String getSeenProtein(String taxonId, String md5checksum)
+            throws ObjectStoreException {
+            String proteinRefId = state.getSeenProtein(taxonId, md5checksum);
+            if (proteinRefId == null && ledger != null) {
+                // the protein of an unchanged entry, already in the mine so only its key is
+                // stored, for the synonym to refer to
+                String accession = ledger.getSkippedProtein(taxonId, md5checksum);
+                if (accession != null) {
+                    Item protein = createItem("UniProtEntry");
+                    protein.setAttribute("primaryAccession", accession);
+                    store(protein);
+                    proteinRefId = protein.getIdentifier();
+                    state.addSeenSequence(taxonId, md5checksum, proteinRefId);
+                }
+            }
+            return proteinRefId;
+        }
+
+        private boolean isDeferred(UniprotEntry uniprotEntry) {
+            if (!state.isWaitingForSprot() || allowduplicates || uniprotEntry.isDuplicate()) {
+                return false;
+            }
+            String md5checksum = uniprotEntry.getMd5checksum();
+            return state.sprotIndex.hasSequence(md5checksum)
+                && state.getSeenProtein(uniprotEntry.getTaxonId(), md5checksum) == null;
+        }
+
+        /**
+         * Once the sprot file is stored, store the genes only trembl entries had and the
+         * trembl entries that were waiting for sprot proteins. Called with the converter locked.
+         */
+        void storeDeferred() throws SAXException, ObjectStoreException {
+            for (Map.Entry<String, PendingGene> pending : state.pendingGenes.entrySet()) {
+                PendingGene gene = pending.getValue();
+                startGene(gene.gene, gene.uniprotEntry, pending.getKey());
+                storeGene(gene.gene, gene.uniprotEntry, gene.hasMultipleGenes);
+            }
+            state.pendingGenes.clear();
+            List<UniprotEntry> deferredEntries = state.deferredEntries;
+            state.deferredEntries = new ArrayList<UniprotEntry>();
+            for (UniprotEntry deferredEntry : deferredEntries) {
+                storeItems(deferredEntry);
+            }
+        }
+
         /**
          * {@inheritDoc}
          */
         @Override
         public void characters(char[] ch, int start, int length) {
+            if (attName == null) {
+                return;
+            }
+            // DefaultHandler may call this method more than once for a single
+            // attribute content -> hold text & create attribute in endElement
             int st = start;
-            int l = length;
-            if (attName != null) {
-
-                // DefaultHandler may call this method more than once for a single
-                // attribute content -> hold text & create attribute in endElement
-                while (l > 0) {
-                    boolean whitespace = false;
-                    switch(ch[st]) {
-                        case ' ':
-                        case '\r':
-                        case '\n':
-                        case '\t':
-                            whitespace = true;
-                            break;
-                        default:
-                            break;
-                    }
-                    if (!whitespace) {
-                        break;
-                    }
+            int end = start + length;
+            if (!residues) {
+                while (st < end && (ch[st] == ' ' || ch[st] == '\r' || ch[st] == '\n'
+                        || ch[st] == '\t')) {
                     ++st;
-                    --l;
                 }
-
-                if (l > 0) {
-                    StringBuffer s = new StringBuffer();
-                    s.append(ch, st, l);
-                    attValue.append(s);
+            }
+            if (textLength + end - st > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + end - st));
+            }
+            if (residues) {
+                for (int i = st; i < end; i++) {
+                    if (UniprotSequence.isResidue(ch[i])) {
+                        text[textLength++] = ch[i];
+                    }
                 }
+            } else {
+                System.arraycopy(ch, st, text, textLength, end - st);
+                textLength += end - st;
             }
         }
 
+        private String text() {
+            return new String(text, 0, textLength);
+        }
 
-        private List<UniprotEntry> processEntry(UniprotEntry uniprotEntry)
+        /**
+         * Create and store the items for an entry.
+         *
+         * @param uniprotEntry the entry or one of its isoforms
+         * @param canonical the stored canonical protein if this is an isoform, its publications,
+         * keywords, comments, EC numbers and gene are the same so are shared with the isoform
+         * @return the stored protein, or null if the entry wasn't stored
+         */
+        private Item processEntry(UniprotEntry uniprotEntry, Item canonical)
             throws SAXException, ObjectStoreException {
             entryCount++;
             if (entryCount % 10000 == 0) {
                 LOG.info("Processed " + entryCount + " entries.");
             }
-            List<UniprotEntry> isoforms = new ArrayList<UniprotEntry>();
             // have we already seen a protein for this organism with the same sequence?
-            if (!uniprotEntry.isIsoform() && !allowduplicates
-                    && seenSequence(uniprotEntry.getTaxonId(), uniprotEntry.getMd5checksum())) {
+            String proteinRefId = (uniprotEntry.isIsoform() || allowduplicates) ? null
+                : getSeenProtein(uniprotEntry.getTaxonId(), uniprotEntry.getMd5checksum());
+            if (proteinRefId != null) {
                 // if we have seen this sequence before for this organism just add the
                 // primaryAccession of this protein as a synonym for the one already stored.
-                Map<String, String> orgSequences = sequences.get(uniprotEntry.getTaxonId());
-                if (orgSequences != null
-                        && orgSequences.containsKey(uniprotEntry.getMd5checksum())) {
-                    Item synonym = createSynonym(orgSequences.get(uniprotEntry.getMd5checksum()),
-                            uniprotEntry.getPrimaryAccession(), false);
-                    synonymsAndXrefs.add(synonym);
+                Item synonym = createSynonym(proteinRefId, uniprotEntry.getPrimaryAccession(),
+                        false);
+                if (synonym != null) {
+                    state.synonymsAndXrefs.add(synonym);
                 }
-                return isoforms;
+                return null;
             }
 
             if (uniprotEntry.hasDatasetRefId() && uniprotEntry.hasPrimaryAccession()
                     && !uniprotEntry.isDuplicate()) {
 
                 if (!loadfragments && "true".equalsIgnoreCase(uniprotEntry.isFragment())) {
-                    return Collections.emptyList();
+                    return null;
                 }
 
                 setDataSet(uniprotEntry.getDatasetRefId());
-                for (String isoformAccession: uniprotEntry.getIsoforms()) {
-                    isoforms.add(uniprotEntry.createIsoformEntry(isoformAccession));
-                }
 
                 Item protein = createItem("UniProtEntry");
 
                 /* primaryAccession, primaryIdentifier, name, etc */
                 processIdentifiers(protein, uniprotEntry);
 
-                processECNumbers(protein, uniprotEntry);
+                if (canonical == null) {
+                    processECNumbers(protein, uniprotEntry);
+                }
 
                 /* sequence */
                 if (!uniprotEntry.isIsoform()) {
@@ -656,19 +2026,25 @@ public class PombeUniprotConverter extends BioDirectoryConverter
 
                 protein.setReference("organism", getOrganism(uniprotEntry.getTaxonId()));
 
+                if (canonical != null) {
+                    shareCollections(protein, canonical);
+                }
+
                 /* publications */
-                if (uniprotEntry.getPubs() != null) {
+                if (canonical == null && uniprotEntry.getPubs() != null) {
                     protein.setCollection("publications", uniprotEntry.getPubs());
                 }
 
                 /* comments */
                 if (uniprotEntry.hasComments()) {
-                    protein.setCollection("comments", uniprotEntry.getComments());
+                    if (canonical == null) {
+                        protein.setCollection("comments", uniprotEntry.getComments());
+                    }
                     processCommentEvidence(uniprotEntry);
                 }
 
                 /* keywords */
-                if (uniprotEntry.getKeywords() != null) {
+                if (canonical == null && uniprotEntry.getKeywords() != null) {
                     protein.setCollection("keywords", uniprotEntry.getKeywords());
                 }
 
@@ -682,15 +2058,24 @@ public class PombeUniprotConverter extends BioDirectoryConverter
                 }
 
                 // record that we have seen this sequence for this organism
-                addSeenSequence(uniprotEntry.getTaxonId(), uniprotEntry.getMd5checksum(),
-                        protein.getIdentifier());
+                if (state.addSeenSequence(uniprotEntry.getTaxonId(),
+                        uniprotEntry.getMd5checksum(), protein.getIdentifier())) {
+                    journal("sequences", uniprotEntry.getTaxonId() + ":"
+                            + uniprotEntry.getMd5checksum(), protein.getIdentifier());
+                    if (ledger != null) {
+                        String accession = (canonical == null) ? uniprotEntry.getPrimaryAccession()
+                            : canonical.getAttribute("primaryAccession").getValue();
+                        ledger.addSequence(accession, uniprotEntry.getPrimaryAccession(),
+                                uniprotEntry.getTaxonId(), uniprotEntry.getMd5checksum());
+                    }
+                }
 
                 /* canonical */
                 if (uniprotEntry.isIsoform()) {
                     // the uniprot accession is parsed in the getIdentifiers() method here
                     // so don't move this
                     String canonicalAccession = uniprotEntry.getUniprotAccession();
-                    String canonicalRefId = proteins.get(canonicalAccession);
+                    String canonicalRefId = state.proteins.get(canonicalAccession);
                     if (canonicalRefId == null) {
                         throw new RuntimeException("parsing an isoform without a parent "
                                 + canonicalAccession);
@@ -698,7 +2083,10 @@ public class PombeUniprotConverter extends BioDirectoryConverter
                     protein.setReference("canonicalProtein", canonicalRefId);
                 } else {
                     /* canonical protein so isoforms can refer to it */
-                    proteins.put(uniprotEntry.getPrimaryAccession(), protein.getIdentifier());
+                    state.proteins.put(uniprotEntry.getPrimaryAccession(),
+                            protein.getIdentifier());
+                    journal("proteins", uniprotEntry.getPrimaryAccession(),
+                            protein.getIdentifier());
                 }
 
                 try {
@@ -706,8 +2094,11 @@ public class PombeUniprotConverter extends BioDirectoryConverter
                     processDbrefs(protein, uniprotEntry);
 
                     /* genes */
-                    if (creategenes) {
+                    if (creategenes && canonical == null) {
                         processGene(protein, uniprotEntry);
+                    } else if (creategenes && canonical.hasReference("gene")) {
+                        // the canonical protein's genes are already stored
+                        protein.setReference("gene", canonical.getReference("gene").getRefId());
                     }
 
                     store(protein);
@@ -718,9 +2109,20 @@ public class PombeUniprotConverter extends BioDirectoryConverter
                 } catch (ObjectStoreException e) {
                     throw new SAXException(e);
                 }
-                synonymsAndXrefs = new HashSet<Item>();
+                state.synonymsAndXrefs.clear();
+                return protein;
+            }
+            return null;
+        }
+
+        // the isoform uses the canonical protein's reference lists rather than copies
+        private void shareCollections(Item protein, Item canonical) {
+            for (String name : SHARED_ISOFORM_COLLECTIONS) {
+                ReferenceList collection = canonical.getCollection(name);
+                if (collection != null) {
+                    protein.addCollection(collection);
+                }
             }
-            return isoforms;
         }
 
         private void processCommentEvidence(UniprotEntry uniprotEntry)
@@ -755,9 +2157,12 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         }
 
         private String getSequenceIdentfier(String md5Checksum, String residues, String length) {
-            if (!allSequences.containsKey(md5Checksum)) {
+            return allSequences.getRefId(md5Checksum, () -> {
                 Item item = createItem("Sequence");
-                item.setAttribute("residues", residues);
+                // already created by an earlier source, merged on md5checksum
+                if (!allSequences.isLoaded(md5Checksum)) {
+                    item.setAttribute("residues", residues);
+                }
                 item.setAttribute("length", length);
                 item.setAttribute("md5checksum", md5Checksum);
                 try {
@@ -765,9 +2170,9 @@ public class PombeUniprotConverter extends BioDirectoryConverter
                 } catch (ObjectStoreException e) {
                     throw new RuntimeException(e);
                 }
-                allSequences.put(md5Checksum, item.getIdentifier());
-            }
-            return allSequences.get(md5Checksum);
+                journal("allSequences", md5Checksum, item.getIdentifier());
+                return item.getIdentifier();
+            });
         }
 
         private void processIdentifiers(Item protein, UniprotEntry uniprotEntry) {
@@ -793,20 +2198,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
                 return;
             }
             for (String identifier : ecs) {
-                String refId = ecNumbers.get(identifier);
-
-                if (refId == null) {
-                    Item item = createItem("ECNumber");
-                    item.setAttribute("identifier", identifier);
-                    ecNumbers.put(identifier, item.getIdentifier());
-                    try {
-                        store(item);
-                    } catch (ObjectStoreException e) {
-                        throw new SAXException(e);
-                    }
-                    refId = item.getIdentifier();
-                }
-                protein.addToCollection("ecNumbers", refId);
+                protein.addToCollection("ecNumbers", getECNumber(identifier));
             }
         }
 
@@ -881,7 +2273,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             }
 
             // store xrefs and other synonyms we've created elsewhere
-            for (Item item : synonymsAndXrefs) {
+            for (Item item : state.synonymsAndXrefs) {
                 if (item == null) {
                     continue;
                 }
@@ -910,7 +2302,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             if (xrefs.isEmpty() || xrefs.contains(dataSource)) {
                 Item item = createCrossReference(subjectId, value, dataSource, store);
                 if (item != null) {
-                    synonymsAndXrefs.add(item);
+                    state.synonymsAndXrefs.add(item);
                 }
             }
         }
@@ -923,7 +2315,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
                 Set<String> values = dbref.getValue();
                 if ("GO".equalsIgnoreCase(key)) {
                     for (String goTerm : values) {
-                        String code = getGOEvidenceCode(entry.getGOEvidence(goTerm));
+                        String code = getGOEvidenceCode(uniprotEntry.getGOEvidence(goTerm));
                         Item goEvidence = createItem("GOEvidence");
                         goEvidence.setReference("code", code);
 
@@ -948,36 +2340,40 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         private void processGene(Item protein, UniprotEntry uniprotEntry)
             throws ObjectStoreException {
             String taxId = uniprotEntry.getTaxonId();
-            String uniqueIdentifierField = getUniqueField(taxId);
-            Set<String> geneIdentifiers = getGeneIdentifiers(uniprotEntry, uniqueIdentifierField);
+            GenePlan plan = getGenePlan(taxId);
+            String uniqueIdentifierField = plan.uniqueField;
+            Set<String> geneIdentifiers = plan.uniqueExtractor.extract(uniprotEntry);
             if (geneIdentifiers == null || geneIdentifiers.isEmpty()) {
                 LOG.error("no valid gene identifiers found for "
                         + uniprotEntry.getPrimaryAccession());
                 return;
             }
             boolean hasMultipleGenes = (geneIdentifiers.size() == 1 ? false : true);
-            Item gene = null;
             for (String identifier : geneIdentifiers) {
                 if (StringUtils.isEmpty(identifier)) {
                     continue;
                 }
-                if (GENE_PREFIXES.containsKey(taxId)) {
+                if (plan.prefix != null) {
                     // Prepend RGD:
-                    identifier = GENE_PREFIXES.get(taxId) + identifier;
+                    identifier = plan.prefix + identifier;
                 }
-                gene = getGene(protein, uniprotEntry, identifier, taxId,
-                        uniqueIdentifierField);
-                // if we only have one gene, store later, we may have other gene fields to update
-                if (gene != null && hasMultipleGenes) {
-                    addPubs2Gene(uniprotEntry, gene);
-                    store(gene);
+                Item gene = getGene(protein, uniprotEntry, identifier, taxId,
+                        uniqueIdentifierField, hasMultipleGenes);
+                if (gene != null) {
+                    storeGene(gene, uniprotEntry, hasMultipleGenes);
                 }
             }
+        }
 
-            if (gene != null && !hasMultipleGenes) {
-                Set<String> geneFields = getOtherFields(taxId);
-                for (String geneField : geneFields) {
-                    geneIdentifiers = getGeneIdentifiers(uniprotEntry, geneField);
+        // if we only have one gene, set the other gene fields too
+        private void storeGene(Item gene, UniprotEntry uniprotEntry, boolean hasMultipleGenes)
+            throws ObjectStoreException {
+            if (!hasMultipleGenes) {
+                String taxId = uniprotEntry.getTaxonId();
+                GenePlan plan = getGenePlan(taxId);
+                for (int i = 0; i < plan.otherFields.length; i++) {
+                    String geneField = plan.otherFields[i];
+                    Set<String> geneIdentifiers = plan.otherExtractors[i].extract(uniprotEntry);
                     if (geneIdentifiers == null) {
                         continue;
                     }
@@ -985,9 +2381,9 @@ public class PombeUniprotConverter extends BioDirectoryConverter
                         if (StringUtils.isEmpty(geneIdentifier)) {
                             continue;
                         }
-                        if (GENE_PREFIXES.containsKey(taxId)) {
+                        if (plan.prefix != null) {
                             // Prepend RGD:
-                            geneIdentifier = GENE_PREFIXES.get(taxId) + geneIdentifier;
+                            geneIdentifier = plan.prefix + geneIdentifier;
                         }
 
                         if ("primaryIdentifier".equals(geneField)) {
@@ -1003,9 +2399,9 @@ public class PombeUniprotConverter extends BioDirectoryConverter
 
                     }
                 }
-                addPubs2Gene(uniprotEntry, gene);
-                store(gene);
             }
+            addPubs2Gene(uniprotEntry, gene);
+            store(gene);
         }
 
         /**
@@ -1022,130 +2418,48 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             }
         }
 
+        // a new gene to store, or null if it's already stored or still pending
         private Item getGene(Item protein, UniprotEntry uniprotEntry, String geneIdentifier,
-                String taxId, String uniqueIdentifierField) {
+                String taxId, String uniqueIdentifierField, boolean hasMultipleGenes) {
             String identifier = resolveGene(taxId, geneIdentifier);
             if (identifier == null) {
                 return null;
             }
 
-            Item gene = genes.get(identifier);
+            Item gene = state.genes.get(identifier);
             if (gene == null) {
                 gene = createItem("Gene");
                 gene.setAttribute(uniqueIdentifierField, identifier);
                 gene.setReference("organism", getOrganism(taxId));
-                if (creatego) {
-                    try {
-                        processGoAnnotation(uniprotEntry, gene);
-                    } catch (SAXException e) {
-                        LOG.error("couldn't process GO annotation for gene - " + identifier);
-                    }
-                }
-                genes.put(identifier, gene);
+                state.genes.put(identifier, gene);
+                journal("genes", identifier, gene.getIdentifier());
                 protein.setReference("gene", gene);
+                if (state.isWaitingForSprot()) {
+                    // a sprot entry may yet have this gene, if so the gene is filled in from it
+                    state.pendingGenes.put(identifier,
+                            new PendingGene(gene, uniprotEntry, hasMultipleGenes));
+                    return null;
+                }
+                startGene(gene, uniprotEntry, identifier);
                 return gene;
             }
             protein.setReference("gene", gene);
-            return null;
-        }
-
-        private Set<String> getGeneIdentifiers(UniprotEntry uniprotEntry, String identifierField) {
-            String taxId = uniprotEntry.getTaxonId();
-
-            // which part of XML file to get values (eg. FlyBase, ORF, etc)
-            String method = getGeneConfigMethod(taxId, identifierField);
-            String value = getGeneConfigValue(taxId, identifierField);
-            Set<String> geneIdentifiers = new HashSet<String>();
-            if ("name".equals(method)) {
-                geneIdentifiers = getByName(uniprotEntry, taxId, value);
-            } else if ("gene-designation".equals(method)) {
-                geneIdentifiers.addAll(uniprotEntry.getGeneDesignation(value));
-            } else if ("dbref".equals(method)) {
-                geneIdentifiers = getByDbref(uniprotEntry, value);
-            } else {
-                LOG.error("error processing config for organism " + taxId);
-            }
-
-            return geneIdentifiers;
-        }
-
-        private String getGeneConfigMethod(String taxId, String uniqueIdentifierField) {
-            // how to get the identifier, eg. dbref OR name
-            String method = CONFIG.getIdentifierMethod(taxId, uniqueIdentifierField);
-            if (method == null) {
-                // use default set in config file, if this organism isn't configured
-                method = CONFIG.getIdentifierMethod("default", uniqueIdentifierField);
-                if (method == null) {
-                    throw new RuntimeException("error processing line in config file for organism "
-                                               + taxId);
-                }
-            }
-            return method;
-        }
-
-        private String getGeneConfigValue(String taxId, String uniqueIdentifierField) {
-            // what value to use with method, eg. "FlyBase" or "ORF"
-            String value = CONFIG.getIdentifierValue(taxId, uniqueIdentifierField);
-            if (value == null) {
-                value = CONFIG.getIdentifierValue("default", uniqueIdentifierField);
-                if (value == null) {
-                    throw new RuntimeException("error processing line in config file for organism "
-                                               + taxId);
-                }
-            }
-            return value;
-        }
-
-        private Set<String> getByName(UniprotEntry uniprotEntry, String taxId, String value) {
-            if (uniprotEntry.getGeneNames() == null || uniprotEntry.getGeneNames().isEmpty()) {
-                LOG.error("No gene names for " + taxId + ". protein accession:"
-                        + uniprotEntry.getPrimaryAccession());
-                return null;
+            if (state.sprot == null && state.pendingGenes.remove(identifier) != null) {
+                // created for a trembl entry, but filled in from this one as if stored first
+                startGene(gene, uniprotEntry, identifier);
+                return gene;
             }
-            Set<String> geneNames = uniprotEntry.getGeneNames().get(value);
-            return geneNames;
+            return null;
         }
 
-        private Set<String> getByDbref(UniprotEntry uniprotEntry, String value) {
-            Set<String> geneIdentifiers = new HashSet<String>();
-            if ("Ensembl".equals(value)) {
-                // See #2122
-                geneIdentifiers.addAll(uniprotEntry.getGeneDesignation(value));
-            } else {
-                Map<String, Set<String>> dbrefs = uniprotEntry.getDbrefs();
-                final String msg = "no " + value
-                    + " identifier found for gene attached to protein: "
-                    + uniprotEntry.getPrimaryAccession();
-                if (dbrefs == null || dbrefs.isEmpty()) {
-                    LOG.error(msg);
-                    return null;
-                }
-                Set<String> dbrefValues = dbrefs.get(value);
-                if (dbrefValues == null || dbrefValues.isEmpty()) {
-                    LOG.error(msg);
-                    return null;
+        private void startGene(Item gene, UniprotEntry uniprotEntry, String identifier) {
+            if (creatego) {
+                try {
+                    processGoAnnotation(uniprotEntry, gene);
+                } catch (SAXException e) {
+                    LOG.error("couldn't process GO annotation for gene - " + identifier);
                 }
-                geneIdentifiers = dbrefs.get(value);
-            }
-            return geneIdentifiers;
-        }
-
-        // which gene.identifier field has to be unique
-        private String getUniqueField(String taxId) {
-            String uniqueIdentifierField = CONFIG.getUniqueIdentifier(taxId);
-            if (uniqueIdentifierField == null) {
-                uniqueIdentifierField = CONFIG.getUniqueIdentifier("default");
-            }
-            return uniqueIdentifierField;
-        }
-
-        // for this organism, set the following gene fields
-        private Set<String> getOtherFields(String taxId) {
-            Set<String> geneFields = CONFIG.getGeneIdentifierFields(taxId);
-            if (geneFields == null) {
-                geneFields = CONFIG.getGeneIdentifierFields("default");
             }
-            return geneFields;
         }
 
         private String resolveGene(String taxId, String identifier) {
@@ -1171,27 +2485,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         }
     }
 
-    private void addSeenSequence(String taxonId, String md5checksum, String proteinIdentifier) {
-        Map<String, String> orgSequences = sequences.get(taxonId);
-        if (orgSequences == null) {
-            orgSequences = new HashMap<String, String>();
-            sequences.put(taxonId, orgSequences);
-        }
-        if (!orgSequences.containsKey(md5checksum)) {
-            orgSequences.put(md5checksum, proteinIdentifier);
-        }
-    }
-
-    private boolean seenSequence(String taxonId, String md5checksum) {
-        Map<String, String> orgSequences = sequences.get(taxonId);
-        if (orgSequences == null) {
-            orgSequences = new HashMap<String, String>();
-            sequences.put(taxonId, orgSequences);
-        }
-        return orgSequences.containsKey(md5checksum);
-    }
-
-    private String getKeyword(String title)
+    private synchronized String getKeyword(String title)
         throws SAXException {
         String refId = keywords.get(title);
         if (refId == null) {
@@ -1200,6 +2494,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             item.setReference("ontology", ontologies.get("UniProtKeyword"));
             refId = item.getIdentifier();
             keywords.put(title, refId);
+            journal("keywords", title, refId);
             try {
                 store(item);
             } catch (ObjectStoreException e) {
@@ -1212,7 +2507,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
     // putting publications in map for later use
     // key = EC1, value = reference to publication
     // used by comments
-    private String getEvidence(String attribute) throws SAXException {
+    private synchronized String getEvidence(String attribute) throws SAXException {
         if (attribute.contains("=")) {
             String[] bits = attribute.split("=");
             if (bits.length == 2) {
@@ -1225,7 +2520,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         return null;
     }
 
-    private String getPub(String pubMedId)
+    private synchronized String getPub(String pubMedId)
         throws SAXException {
         String refId = pubs.get(pubMedId);
 
@@ -1233,6 +2528,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             Item item = createItem("Publication");
             item.setAttribute("pubMedId", pubMedId);
             pubs.put(pubMedId, item.getIdentifier());
+            journal("pubs", pubMedId, item.getIdentifier());
             try {
                 store(item);
             } catch (ObjectStoreException e) {
@@ -1244,8 +2540,26 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         return refId;
     }
 
+    private synchronized String getECNumber(String identifier)
+        throws SAXException {
+        String refId = ecNumbers.get(identifier);
+        if (refId == null) {
+            Item item = createItem("ECNumber");
+            item.setAttribute("identifier", identifier);
+            refId = item.getIdentifier();
+            ecNumbers.put(identifier, refId);
+            journal("ecNumbers", identifier, refId);
+            try {
+                store(item);
+            } catch (ObjectStoreException e) {
+                throw new SAXException(e);
+            }
+        }
+        return refId;
+    }
+
     // value is NAS:FlyBase
-    private String getGOEvidenceCode(String value)
+    private synchronized String getGOEvidenceCode(String value)
         throws SAXException {
         String[] bits = value.split(":");
         String code = "";
@@ -1260,6 +2574,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             item.setAttribute("code", code);
             refId = item.getIdentifier();
             goEvidenceCodes.put(code, refId);
+            journal("goEvidenceCodes", code, refId);
             try {
                 store(item);
             } catch (ObjectStoreException e) {
@@ -1270,7 +2585,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         return refId;
     }
 
-    private String getGoTerm(String identifier)
+    private synchronized String getGoTerm(String identifier)
         throws SAXException {
         String refId = goterms.get(identifier);
         if (refId == null) {
@@ -1278,6 +2593,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             item.setAttribute("identifier", identifier);
             refId = item.getIdentifier();
             goterms.put(identifier, refId);
+            journal("goterms", identifier, refId);
             try {
                 store(item);
             } catch (ObjectStoreException e) {
@@ -1287,13 +2603,14 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         return refId;
     }
 
-    private String setOntology(String title)
+    private synchronized String setOntology(String title)
         throws SAXException {
         String refId = ontologies.get(title);
         if (refId == null) {
             Item ontology = createItem("Ontology");
             ontology.setAttribute("name", title);
             ontologies.put(title, ontology.getIdentifier());
+            journal("ontologies", title, ontology.getIdentifier());
             try {
                 store(ontology);
             } catch (ObjectStoreException e) {
@@ -1303,7 +2620,7 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         return refId;
     }
 
-    private Item getFeature(String type, String description, String status)
+    private synchronized Item getFeature(String type, String description, String status)
         throws SAXException {
         //        List<String> featureTypes = CONFIG.getFeatureTypes();
         //        if (featureTypes.isEmpty() || featureTypes.contains(type)) {
@@ -1345,14 +2662,28 @@ public class PombeUniprotConverter extends BioDirectoryConverter
         }
     }
 
-    private boolean isUniqueIdentifier(String identifier) {
-        if (identifiers == null) {
-            identifiers = new HashSet<String>();
-        } else if (identifiers.contains(identifier)) {
+    private synchronized boolean isUniqueIdentifier(String identifier) {
+        boolean unique;
+        if (identifierIndex != null) {
+            try {
+                unique = identifierIndex.putIfAbsent(identifier, "") == null;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            unique = identifiers.add(identifier);
+            if (unique) {
+                journal("identifiers", identifier, "");
+            }
+        }
+        if (unique && ledger != null && ledger.isUnchanged(identifier)) {
+            // the accession of an entry skipped as unchanged, and already in the mine
+            unique = false;
+        }
+        if (!unique) {
             LOG.error("not assigning duplicate identifier:  " + identifier);
             return false;
         }
-        identifiers.add(identifier);
         return true;
     }
 
@@ -1401,6 +2732,16 @@ public class PombeUniprotConverter extends BioDirectoryConverter
             this.identifier = identifier;
         }
 
+        /**
+         * Empty the holder so it can be used for the next disease.
+         */
+        protected void clear() {
+            name = null;
+            acronym = null;
+            description = null;
+            identifier = null;
+        }
+
         @Override
         public String toString() {
             // MIM id; name; acronym; description: text
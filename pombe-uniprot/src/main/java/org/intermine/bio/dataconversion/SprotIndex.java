@@ -0,0 +1,159 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The primary accessions of an organism's Swiss-Prot entries and the checksums of the
+ * sequences that will be stored for them, read by scanning the bytes of the sprot file
+ * without parsing it. With it the TrEMBL file can be converted alongside the sprot file,
+ * as whether a TrEMBL entry duplicates a Swiss-Prot one no longer depends on the Swiss-Prot
+ * entry having been stored first.
+ * <p>
+ * Keys are kept as 64 bit hashes, see LongHashSet. Isoforms are created from their canonical
+ * entry, so the index doesn't need them.
+ * </p>
+ */
+class SprotIndex
+{
+    private static final byte[] ACCESSION = bytes("<accession>");
+    private static final byte[] ACCESSION_END = bytes("</accession>");
+    private static final byte[] SEQUENCE = bytes("<sequence");
+    private static final byte[] SEQUENCE_END = bytes("</sequence>");
+    private static final byte[] FRAGMENT = bytes(" fragment=");
+
+    private final LongHashSet accessions = new LongHashSet();
+    private final LongHashSet sequences = new LongHashSet();
+
+    /**
+     * @param file the organism's uniprot_sprot.xml file, possibly compressed
+     * @param loadfragments whether sequences of fragments are stored
+     * @throws IOException if the file can't be read
+     */
+    SprotIndex(File file, boolean loadfragments) throws IOException {
+        try (InputStream in = CompressedInput.openStream(file)) {
+            EntryScanner scanner = new EntryScanner(in);
+            byte[] xml;
+            while ((xml = scanner.next()) != null) {
+                add(xml, loadfragments);
+            }
+        }
+    }
+
+    // as the converter: a protein is stored for the first entry with each primary accession,
+    // unless it's a fragment
+    private void add(byte[] xml, boolean loadfragments) {
+        int start = indexOf(xml, ACCESSION, 0);
+        if (start < 0) {
+            return;
+        }
+        start += ACCESSION.length;
+        int end = indexOf(xml, ACCESSION_END, start);
+        if (end < 0) {
+            return;
+        }
+        String accession = new String(xml, start, end - start, StandardCharsets.US_ASCII).trim();
+        if (accession.isEmpty() || !accessions.add(LongHashSet.hash(accession))) {
+            return;
+        }
+        // the entry's own sequence is its last, isoform sequences in comments have no residues
+        int sequence = lastIndexOf(xml, SEQUENCE);
+        if (sequence < 0) {
+            return;
+        }
+        int tagEnd = indexOf(xml, new byte[] {'>'}, sequence);
+        if (tagEnd < 0 || xml[tagEnd - 1] == '/') {
+            return;
+        }
+        if (!loadfragments && indexOf(xml, FRAGMENT, sequence, tagEnd) >= 0) {
+            return;
+        }
+        int sequenceEnd = indexOf(xml, SEQUENCE_END, tagEnd);
+        if (sequenceEnd < 0) {
+            return;
+        }
+        // the characters the parser sees, read as the converter reads them
+        StringBuilder residues = new StringBuilder(sequenceEnd - tagEnd);
+        for (int i = tagEnd + 1; i < sequenceEnd; i++) {
+            if (UniprotSequence.isResidue(xml[i])) {
+                residues.append((char) xml[i]);
+            }
+        }
+        sequences.add(LongHashSet.hash(SequenceRegistry.md5checksum(residues.toString())));
+    }
+
+    /**
+     * @param accession primary accession of an entry
+     * @return true if a Swiss-Prot entry has this primary accession
+     */
+    boolean hasAccession(String accession) {
+        return accessions.contains(LongHashSet.hash(accession));
+    }
+
+    /**
+     * @param md5checksum checksum of a sequence
+     * @return true if a protein with this sequence will be stored for a Swiss-Prot entry
+     */
+    boolean hasSequence(String md5checksum) {
+        return sequences.contains(LongHashSet.hash(md5checksum));
+    }
+
+    /**
+     * @return number of Swiss-Prot entries
+     */
+    int size() {
+        return accessions.size();
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern, int from) {
+        return indexOf(bytes, pattern, from, bytes.length);
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern, int from, int limit) {
+        int last = limit - pattern.length;
+        for (int i = from; i <= last; i++) {
+            if (matches(bytes, pattern, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // <sequence followed by a space or >, not eg. <sequences
+    private static int lastIndexOf(byte[] bytes, byte[] pattern) {
+        for (int i = bytes.length - pattern.length - 1; i >= 0; i--) {
+            if (matches(bytes, pattern, i)) {
+                byte next = bytes[i + pattern.length];
+                if (next == ' ' || next == '>' || next == '\n' || next == '\t') {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] bytes, byte[] pattern, int at) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (bytes[at + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,368 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where a UniProt load had got to, and the refIds it had cached by then, so a failed load can
+ * carry on from the entry after the last checkpoint without creating the cached items again.
+ * <p>
+ * The file is a log that each checkpoint appends a record to, holding only what was cached
+ * since the record before: a [checkpoint] line, lines for the file being read, the offset just
+ * after the last stored entry, the entry count and the number of writes to the item writer so
+ * far, a line for each file already finished and each map emptied, then each named map as a
+ * [name] line followed by tab separated key and value lines, and an [end] line.
+ * </p>
+ * <p>
+ * Items written after a checkpoint are only committed once the item writer is closed, which
+ * happens when a conversion fails but not when it is killed. So a failed run appends a
+ * [stored] record of the writes it had made and the ids they were given, and the run that
+ * resumes it skips those writes as it repeats them. Records after the last [stored] record are
+ * from a run that was killed, their items were never committed and they're ignored.
+ * </p>
+ */
+class UniprotCheckpoint
+{
+    private static final String CHECKPOINT = "[checkpoint]";
+    private static final String STORED = "[stored]";
+    private static final String END = "[end]";
+    // item ids of the writes made since the last checkpoint, in a [stored] record
+    private static final String STORED_IDS = "storedIds";
+    private String file = null;
+    private long offset = 0;
+    private int entryCount = 0;
+    private long writes = 0;
+    private long storedWrites = 0;
+    // for a record read from the file, true if it's a [stored] record
+    private boolean stored = false;
+    private Set<String> doneFiles = new LinkedHashSet<String>();
+    private Set<String> resets = new LinkedHashSet<String>();
+    private Map<String, Map<String, String>> maps =
+        new LinkedHashMap<String, Map<String, String>>();
+    // bytes of the file up to the end of the last [stored] record
+    private long length = 0;
+
+    /**
+     * @param file path of the file being read, null between taxa
+     * @param offset offset in the uncompressed file just after the last stored entry
+     * @param entryCount entries processed in the file so far
+     * @param writes writes to the item writer so far
+     */
+    void setPosition(String file, long offset, int entryCount, long writes) {
+        this.file = file;
+        this.offset = offset;
+        this.entryCount = entryCount;
+        this.writes = writes;
+    }
+
+    String getFile() {
+        return file;
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    long getWrites() {
+        return writes;
+    }
+
+    /**
+     * @return writes the failed run made, skipped when it is resumed, 0 if none are
+     */
+    long getStoredWrites() {
+        return storedWrites;
+    }
+
+    /**
+     * @return item ids by write number, for the writes the failed run made after its last
+     * checkpoint
+     */
+    Map<String, String> getStoredIds() {
+        return getMap(STORED_IDS);
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    void setDoneFiles(Set<String> doneFiles) {
+        this.doneFiles = new LinkedHashSet<String>(doneFiles);
+    }
+
+    Set<String> getDoneFiles() {
+        return doneFiles;
+    }
+
+    /**
+     * Empty a map before this record's values are added to it, eg. at the start of a taxon.
+     *
+     * @param name name of the map
+     */
+    void reset(String name) {
+        resets.add(name);
+        maps.remove(name);
+    }
+
+    /**
+     * @param name name of the map
+     * @param key key, without tabs or line breaks
+     * @param value value, without line breaks, "" for a map used as a set
+     */
+    void put(String name, String key, String value) {
+        Map<String, String> map = maps.get(name);
+        if (map == null) {
+            map = new LinkedHashMap<String, String>();
+            maps.put(name, map);
+        }
+        map.put(key, value);
+    }
+
+    /**
+     * @param name name of the map
+     * @return the map, empty if the checkpoint doesn't have it
+     */
+    Map<String, String> getMap(String name) {
+        Map<String, String> map = maps.get(name);
+        return (map == null) ? Collections.<String, String>emptyMap() : map;
+    }
+
+    /**
+     * Append this checkpoint to the file as a record.
+     *
+     * @param checkpointFile file to append to
+     * @throws IOException if the file can't be written
+     */
+    void append(File checkpointFile) throws IOException {
+        try (Writer writer = openAppend(checkpointFile)) {
+            writer.write(CHECKPOINT + "\n");
+            writeLine(writer, "file", file);
+            writeLine(writer, "offset", String.valueOf(offset));
+            writeLine(writer, "entryCount", String.valueOf(entryCount));
+            writeLine(writer, "writes", String.valueOf(writes));
+            for (String doneFile : doneFiles) {
+                writeLine(writer, "done", doneFile);
+            }
+            for (String name : resets) {
+                writeLine(writer, "reset", name);
+            }
+            writeMaps(writer, maps);
+            writer.write(END + "\n");
+        }
+    }
+
+    /**
+     * Append a record of the writes a failed run made, all committed when its item writer is
+     * closed.
+     *
+     * @param checkpointFile file to append to
+     * @param storedWrites writes made so far
+     * @param storedIds item ids by write number for the writes made since the last checkpoint
+     * @throws IOException if the file can't be written
+     */
+    static void appendStored(File checkpointFile, long storedWrites,
+            Map<String, String> storedIds) throws IOException {
+        try (Writer writer = openAppend(checkpointFile)) {
+            writer.write(STORED + "\n");
+            writeLine(writer, "writes", String.valueOf(storedWrites));
+            writeMaps(writer, Collections.singletonMap(STORED_IDS, storedIds));
+            writer.write(END + "\n");
+        }
+    }
+
+    private static Writer openAppend(File checkpointFile) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(checkpointFile, true), StandardCharsets.UTF_8));
+    }
+
+    private static void writeMaps(Writer writer, Map<String, Map<String, String>> maps)
+        throws IOException {
+        for (Map.Entry<String, Map<String, String>> map : maps.entrySet()) {
+            writer.write("[" + map.getKey() + "]\n");
+            for (Map.Entry<String, String> entry : map.getValue().entrySet()) {
+                writeLine(writer, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static void writeLine(Writer writer, String key, String value)
+        throws IOException {
+        String line = key + "\t" + (value == null ? "" : value);
+        if (line.indexOf('\t') != key.length() || line.indexOf('\n') >= 0
+                || line.indexOf('\r') >= 0) {
+            throw new RuntimeException("Can't write to checkpoint: " + line);
+        }
+        writer.write(line);
+        writer.write('\n');
+    }
+
+    /**
+     * Drop any records after the last [stored] one, before a resumed run appends its own.
+     *
+     * @param checkpointFile file read by read()
+     * @throws IOException if the file can't be truncated
+     */
+    void truncate(File checkpointFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(checkpointFile.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    /**
+     * @param checkpointFile file written by append() and appendStored()
+     * @return every record up to the last [stored] one combined, or null if the file doesn't
+     * exist or has no [stored] record
+     * @throws IOException if the file can't be read
+     */
+    static UniprotCheckpoint read(File checkpointFile) throws IOException {
+        if (!checkpointFile.exists()) {
+            return null;
+        }
+        List<UniprotCheckpoint> records = new ArrayList<UniprotCheckpoint>();
+        int lastStored = -1;
+        long length = 0;
+        UniprotCheckpoint record = null;
+        Map<String, String> map = null;
+        // a run killed while appending a record can leave part of a line at the end
+        String badLine = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(checkpointFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                length += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (CHECKPOINT.equals(line) || STORED.equals(line)) {
+                    if (badLine != null) {
+                        // not at the end, so the file is corrupt
+                        throw new RuntimeException("Bad line in " + checkpointFile + ": "
+                                + badLine);
+                    }
+                    record = new UniprotCheckpoint();
+                    record.stored = STORED.equals(line);
+                    map = null;
+                    continue;
+                }
+                if (record == null) {
+                    badLine = line;
+                    continue;
+                }
+                if (END.equals(line)) {
+                    if (record.stored) {
+                        lastStored = records.size();
+                        record.length = length;
+                    }
+                    records.add(record);
+                    record = null;
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                if (tab < 0 && line.startsWith("[") && line.endsWith("]")) {
+                    map = new LinkedHashMap<String, String>();
+                    record.maps.put(line.substring(1, line.length() - 1), map);
+                    continue;
+                }
+                if (tab < 0 || !readLine(record, map, line.substring(0, tab),
+                        line.substring(tab + 1))) {
+                    badLine = line;
+                    record = null;
+                }
+            }
+        }
+        // a record without an [end] line was cut short, and is ignored with the others after
+        // the last [stored] record
+        if (lastStored < 0) {
+            return null;
+        }
+        UniprotCheckpoint checkpoint = new UniprotCheckpoint();
+        for (UniprotCheckpoint next : records.subList(0, lastStored + 1)) {
+            checkpoint.add(next);
+        }
+        return checkpoint;
+    }
+
+    // a key and value line outside the maps, false if it can't be read
+    private static boolean readLine(UniprotCheckpoint record, Map<String, String> map,
+            String key, String value) {
+        if (map != null) {
+            map.put(key, value);
+            return true;
+        }
+        try {
+            if ("file".equals(key)) {
+                record.file = value.isEmpty() ? null : value;
+            } else if ("offset".equals(key)) {
+                record.offset = Long.parseLong(value);
+            } else if ("entryCount".equals(key)) {
+                record.entryCount = Integer.parseInt(value);
+            } else if ("writes".equals(key) && record.stored) {
+                record.storedWrites = Long.parseLong(value);
+            } else if ("writes".equals(key)) {
+                record.writes = Long.parseLong(value);
+            } else if ("done".equals(key)) {
+                record.doneFiles.add(value);
+            } else if ("reset".equals(key)) {
+                record.resets.add(value);
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return true;
+    }
+
+    // combine with the next record in the file
+    private void add(UniprotCheckpoint next) {
+        if (next.stored) {
+            storedWrites = next.storedWrites;
+            maps.put(STORED_IDS, next.getMap(STORED_IDS));
+            length = next.length;
+            return;
+        }
+        // the writes of a failed run before this checkpoint are behind it
+        storedWrites = 0;
+        maps.remove(STORED_IDS);
+        setPosition(next.file, next.offset, next.entryCount, next.writes);
+        doneFiles.addAll(next.doneFiles);
+        for (String name : next.resets) {
+            maps.remove(name);
+        }
+        for (Map.Entry<String, Map<String, String>> map : next.maps.entrySet()) {
+            Map<String, String> values = maps.get(map.getKey());
+            if (values == null) {
+                values = new LinkedHashMap<String, String>();
+                maps.put(map.getKey(), values);
+            }
+            values.putAll(map.getValue());
+        }
+    }
+}
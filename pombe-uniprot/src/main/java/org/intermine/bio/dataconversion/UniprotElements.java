@@ -0,0 +1,149 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Int ids of the UniProt XML elements the converter handles, so the handler looks each element
+ * name up once and then switches on ints, and the path of open elements is an int array
+ * rather than a stack of names.
+ */
+final class UniprotElements
+{
+    static final int NONE = -1;
+    static final int OTHER = 0;
+    static final int ENTRY = 1;
+    static final int PROTEIN = 2;
+    static final int RECOMMENDED_NAME = 3;
+    static final int SUBMITTED_NAME = 4;
+    static final int ALTERNATIVE_NAME = 5;
+    static final int COMPONENT = 6;
+    static final int FULL_NAME = 7;
+    static final int SHORT_NAME = 8;
+    static final int NAME = 9;
+    static final int EC_NUMBER = 10;
+    static final int ACCESSION = 11;
+    static final int DB_REFERENCE = 12;
+    static final int ORGANISM = 13;
+    static final int ISOFORM = 14;
+    static final int ID = 15;
+    static final int SEQUENCE = 16;
+    static final int FEATURE = 17;
+    static final int BEGIN = 18;
+    static final int END = 19;
+    static final int POSITION = 20;
+    static final int CITATION = 21;
+    static final int COMMENT = 22;
+    static final int TEXT = 23;
+    static final int KEYWORD = 24;
+    static final int PROPERTY = 25;
+    static final int GENE = 26;
+    static final int EVIDENCE = 27;
+    static final int DISEASE = 28;
+    static final int ACRONYM = 29;
+    static final int DESCRIPTION = 30;
+    static final int SCOPE = 31;
+    static final int REFERENCE = 32;
+    // lower case, as checked by the original handler, not in UniProt files
+    static final int LOWER_CASE_DB_REFERENCE = 33;
+
+    private static final Map<String, Integer> IDS = new HashMap<String, Integer>();
+
+    static {
+        IDS.put("entry", ENTRY);
+        IDS.put("protein", PROTEIN);
+        IDS.put("recommendedName", RECOMMENDED_NAME);
+        IDS.put("submittedName", SUBMITTED_NAME);
+        IDS.put("alternativeName", ALTERNATIVE_NAME);
+        IDS.put("component", COMPONENT);
+        IDS.put("fullName", FULL_NAME);
+        IDS.put("shortName", SHORT_NAME);
+        IDS.put("name", NAME);
+        IDS.put("ecNumber", EC_NUMBER);
+        IDS.put("accession", ACCESSION);
+        IDS.put("dbReference", DB_REFERENCE);
+        IDS.put("organism", ORGANISM);
+        IDS.put("isoform", ISOFORM);
+        IDS.put("id", ID);
+        IDS.put("sequence", SEQUENCE);
+        IDS.put("feature", FEATURE);
+        IDS.put("begin", BEGIN);
+        IDS.put("end", END);
+        IDS.put("position", POSITION);
+        IDS.put("citation", CITATION);
+        IDS.put("comment", COMMENT);
+        IDS.put("text", TEXT);
+        IDS.put("keyword", KEYWORD);
+        IDS.put("property", PROPERTY);
+        IDS.put("gene", GENE);
+        IDS.put("evidence", EVIDENCE);
+        IDS.put("disease", DISEASE);
+        IDS.put("acronym", ACRONYM);
+        IDS.put("description", DESCRIPTION);
+        IDS.put("scope", SCOPE);
+        IDS.put("reference", REFERENCE);
+        IDS.put("dbreference", LOWER_CASE_DB_REFERENCE);
+    }
+
+    private UniprotElements() {
+        // don't instantiate
+    }
+
+    /**
+     * @param qName element name
+     * @return id of the element, OTHER if the converter doesn't handle it
+     */
+    static int id(String qName) {
+        Integer id = IDS.get(qName);
+        return (id == null) ? OTHER : id;
+    }
+
+    /**
+     * Ids of the currently open elements, innermost last.
+     */
+    static final class Path
+    {
+        private int[] ids = new int[16];
+        private int depth = 0;
+
+        void push(int id) {
+            if (depth == ids.length) {
+                ids = Arrays.copyOf(ids, depth * 2);
+            }
+            ids[depth++] = id;
+        }
+
+        void pop() {
+            depth--;
+        }
+
+        void clear() {
+            depth = 0;
+        }
+
+        /**
+         * @return the innermost open element, NONE if there isn't one
+         */
+        int parent() {
+            return (depth > 0) ? ids[depth - 1] : NONE;
+        }
+
+        /**
+         * @return the element enclosing the innermost open element, NONE if there isn't one
+         */
+        int grandparent() {
+            return (depth > 1) ? ids[depth - 2] : NONE;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The version and an md5 checksum of each UniProt entry from the last load, used to load only
+ * the entries that were added or updated since then. Entries are checked using the bytes read
+ * by EntryScanner, before they're handed to a parser, so unchanged entries are never parsed.
+ * <p>
+ * An entry is unchanged if both its version attribute and its checksum are the same. The
+ * version alone isn't trusted, as not every change to an entry's XML comes with a new version.
+ * An accession seen again in the same load, eg. in both the sprot and trembl files, counts as
+ * changed only if its first entry did.
+ * </p>
+ * <p>
+ * The taxon and sequence checksum of each stored protein are kept too, so the entries of a
+ * later load can still be checked for duplicate accessions and sequences against the entries
+ * that are skipped because they haven't changed.
+ * </p>
+ */
+public class UniprotLedger
+{
+    private static final String ADDED = "added";
+    private static final String UPDATED = "updated";
+    private static final String DELETED = "deleted";
+    private static final byte[] VERSION = bytes(" version=\"");
+    private static final byte[] ACCESSION = bytes("<accession>");
+    private static final byte[] END_TAG = bytes(">");
+
+    // accession -> version and checksum, from the last load
+    private Map<String, String> previous = new HashMap<String, String>();
+    // accession -> version and checksum, this load
+    private Map<String, String> current = new HashMap<String, String>();
+    private List<String> added = new ArrayList<String>();
+    private List<String> updated = new ArrayList<String>();
+    // accessions added or updated this load
+    private Set<String> changed = new HashSet<String>();
+    // accession -> the entry's stored proteins, each as its accession=taxon id:sequence
+    // checksum and separated by commas, from the last load and this load
+    private Map<String, String> previousSequences = new HashMap<String, String>();
+    private Map<String, String> currentSequences = new HashMap<String, String>();
+    // taxon id:sequence checksum -> accession, of the proteins of unchanged entries
+    private Map<String, String> skippedProteins = new HashMap<String, String>();
+
+    /**
+     * @param file ledger written by the last load, ignored if it doesn't exist
+     * @throws IOException if the file can't be read
+     */
+    public UniprotLedger(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // accession, version and checksum, then the proteins stored if there were any
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 3 && fields.length != 4) {
+                    throw new IOException("Bad line in " + file + ": " + line);
+                }
+                previous.put(fields[0], fields[1] + "\t" + fields[2]);
+                if (fields.length == 4) {
+                    previousSequences.put(fields[0], fields[3]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record an entry's version and checksum for this load.
+     *
+     * @param xml bytes of one entry, from &lt;entry to &lt;/entry&gt;
+     * @return true if the entry is new or has changed since the last load
+     */
+    public boolean isChanged(byte[] xml) {
+        String accession = text(xml, ACCESSION, (byte) '<', xml.length);
+        if (accession == null) {
+            // not something we can recognise next time, let the parser deal with it
+            return true;
+        }
+        // an attribute of <entry>, not of <sequence>
+        String version = text(xml, VERSION, (byte) '"', indexOf(xml, END_TAG, xml.length));
+        String fingerprint = (version == null ? "" : version) + "\t" + md5(xml);
+        // taxa may be processed concurrently
+        synchronized (this) {
+            if (current.containsKey(accession)) {
+                return changed.contains(accession);
+            }
+            current.put(accession, fingerprint);
+            String previousFingerprint = previous.get(accession);
+            if (previousFingerprint == null) {
+                added.add(accession);
+            } else if (!previousFingerprint.equals(fingerprint)) {
+                updated.add(accession);
+            } else {
+                String proteins = previousSequences.get(accession);
+                if (proteins != null) {
+                    currentSequences.put(accession, proteins);
+                    for (String protein : proteins.split(",")) {
+                        int separator = protein.indexOf('=');
+                        skippedProteins.putIfAbsent(protein.substring(separator + 1),
+                                protein.substring(0, separator));
+                    }
+                }
+                return false;
+            }
+            changed.add(accession);
+            return true;
+        }
+    }
+
+    /**
+     * @param accession a primary accession
+     * @return true if an entry with the accession was seen in this load and hadn't changed
+     */
+    public synchronized boolean isUnchanged(String accession) {
+        return current.containsKey(accession) && !changed.contains(accession);
+    }
+
+    /**
+     * Record the sequence of a protein stored in this load, for the next load to find
+     * duplicates of if the entry hasn't changed by then.
+     *
+     * @param accession primary accession of the entry
+     * @param proteinAccession accession of the protein, the entry's or one of its isoforms'
+     * @param taxonId taxon of the entry
+     * @param md5checksum checksum of the protein's sequence
+     */
+    public synchronized void addSequence(String accession, String proteinAccession,
+            String taxonId, String md5checksum) {
+        String protein = proteinAccession + "=" + taxonId + ":" + md5checksum;
+        String proteins = currentSequences.get(accession);
+        currentSequences.put(accession, (proteins == null) ? protein : proteins + "," + protein);
+    }
+
+    /**
+     * @param taxonId taxon of the protein
+     * @param md5checksum checksum of the protein's sequence
+     * @return primary accession of an entry seen in this load that hadn't changed and whose
+     * protein has the sequence, or null
+     */
+    public synchronized String getSkippedProtein(String taxonId, String md5checksum) {
+        return skippedProteins.get(taxonId + ":" + md5checksum);
+    }
+
+    /**
+     * @return number of entries seen in this load that hadn't changed
+     */
+    public synchronized int getUnchangedCount() {
+        return current.size() - added.size() - updated.size();
+    }
+
+    /**
+     * Write the ledger of this load, to compare the next load against.
+     *
+     * @param file file to write, replaced once the new file is complete
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void save(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tmpFile))) {
+            for (Map.Entry<String, String> entry : new TreeMap<String, String>(current)
+                    .entrySet()) {
+                String proteins = currentSequences.get(entry.getKey());
+                writer.write(entry.getKey() + "\t" + entry.getValue()
+                        + (proteins == null ? "" : "\t" + proteins));
+                writer.newLine();
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Write the accessions of the entries added, updated and deleted since the last load, one
+     * per line after the change type. Deleted entries are in the last load but not in this
+     * one; they have to be deleted from the mine separately.
+     *
+     * @param file file to write
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void writeManifest(File file) throws IOException {
+        List<String> deleted = new ArrayList<String>();
+        for (String accession : previous.keySet()) {
+            if (!current.containsKey(accession)) {
+                deleted.add(accession);
+            }
+        }
+        // sorted, as entries of different taxa may be checked in any order
+        Collections.sort(added);
+        Collections.sort(updated);
+        Collections.sort(deleted);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("# " + added.size() + " added, " + updated.size() + " updated, "
+                    + deleted.size() + " deleted, " + getUnchangedCount() + " unchanged");
+            writer.newLine();
+            writeAccessions(writer, ADDED, added);
+            writeAccessions(writer, UPDATED, updated);
+            writeAccessions(writer, DELETED, deleted);
+        }
+    }
+
+    private static void writeAccessions(BufferedWriter writer, String type,
+            List<String> accessions) throws IOException {
+        for (String accession : accessions) {
+            writer.write(type + "\t" + accession);
+            writer.newLine();
+        }
+    }
+
+    // ASCII text after the first occurrence of start before limit up to end, or null
+    private static String text(byte[] xml, byte[] start, byte end, int limit) {
+        int from = indexOf(xml, start, limit);
+        if (from < 0) {
+            return null;
+        }
+        from += start.length;
+        for (int i = from; i < xml.length; i++) {
+            if (xml[i] == end) {
+                return new String(xml, from, i - from, StandardCharsets.US_ASCII).trim();
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern, int limit) {
+        int last = Math.min(bytes.length, limit) - pattern.length;
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < pattern.length && bytes[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String md5(byte[] bytes) {
+        try {
+            return SequenceRegistry.toHex(MessageDigest.getInstance("MD5").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
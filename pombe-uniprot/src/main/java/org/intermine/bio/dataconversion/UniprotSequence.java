@@ -0,0 +1,31 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * How the residues of a &lt;sequence&gt; element are read from its text, by the converter's
+ * handler and by SprotIndex, so both get the same md5 checksum. Line breaks and indentation
+ * are dropped wherever they are, however the parser splits the text.
+ */
+final class UniprotSequence
+{
+    private UniprotSequence() {
+        // static methods only
+    }
+
+    /**
+     * @param c a character, or byte, of the element's text
+     * @return false for whitespace, which isn't part of the residues
+     */
+    static boolean isResidue(int c) {
+        return c != ' ' && c != '\n' && c != '\r' && c != '\t';
+    }
+}
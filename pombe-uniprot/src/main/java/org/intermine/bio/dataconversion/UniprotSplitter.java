@@ -0,0 +1,357 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the entries of a whole UniProt release file for some organisms to
+ * [TAXONID]_uniprot_[sprot|trembl].xml files, the names the converter expects. Entries and
+ * their organism's NCBI taxonomy id are found by scanning bytes, so entries for other
+ * organisms are never parsed.
+ * <p>
+ * Uncompressed files are memory-mapped and split into one byte range per thread, each thread
+ * taking the entries that start in its range. Compressed files are read by a single thread.
+ * Entries are written in the same order as in the release.
+ * </p>
+ */
+public class UniprotSplitter
+{
+    private static final Logger LOG = Logger.getLogger(UniprotSplitter.class);
+    private static final byte[] ENTRY_START = bytes("<entry");
+    private static final byte[] ENTRY_END = bytes("</entry>");
+    private static final byte[] ORGANISM = bytes("<organism");
+    private static final byte[] ORGANISM_END = bytes("</organism>");
+    private static final byte[] TAXONOMY = bytes("type=\"NCBI Taxonomy\" id=\"");
+    private static final byte[] HEADER = bytes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<uniprot xmlns=\"http://uniprot.org/uniprot\">\n");
+    private static final byte[] FOOTER = bytes("</uniprot>\n");
+    private static final byte[] NEWLINE = bytes("\n");
+    // bytes mapped at a time, entries are much smaller
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final Set<String> taxonIds;
+    private final int threads;
+    private final long windowSize;
+
+    /**
+     * @param taxonIds organisms to keep
+     * @param threads number of threads scanning each uncompressed file
+     */
+    public UniprotSplitter(Set<String> taxonIds, int threads) {
+        this(taxonIds, threads, WINDOW_SIZE);
+    }
+
+    // with a smaller window, for testing entries across window boundaries
+    UniprotSplitter(Set<String> taxonIds, int threads, long windowSize) {
+        this.taxonIds = taxonIds;
+        this.threads = Math.max(1, threads);
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @param file uniprot_sprot.xml or uniprot_trembl.xml, possibly compressed
+     * @param source sprot or trembl
+     * @param outputDir directory to write the files for each organism to
+     * @return the files written, only for organisms with entries in the file
+     * @throws IOException if the file can't be read or the output written
+     */
+    public List<File> split(File file, String source, File outputDir) throws IOException {
+        outputDir.mkdirs();
+        String suffix = "_uniprot_" + source + ".xml";
+        List<Map<String, File>> parts = new ArrayList<Map<String, File>>();
+        if (CompressedInput.isCompressed(file)) {
+            parts.add(scanStream(file, new File(outputDir, suffix + ".0")));
+        } else {
+            parts = scanMapped(file, new File(outputDir, suffix));
+        }
+
+        // concatenate each organism's parts, in file order
+        Set<String> foundTaxonIds = new TreeSet<String>();
+        for (Map<String, File> part : parts) {
+            foundTaxonIds.addAll(part.keySet());
+        }
+        List<File> outputFiles = new ArrayList<File>();
+        for (String taxonId : foundTaxonIds) {
+            File outputFile = new File(outputDir, taxonId + suffix);
+            try (FileChannel out = new FileOutputStream(outputFile).getChannel()) {
+                out.write(ByteBuffer.wrap(HEADER));
+                for (Map<String, File> part : parts) {
+                    File partFile = part.get(taxonId);
+                    if (partFile == null) {
+                        continue;
+                    }
+                    try (FileChannel in = new RandomAccessFile(partFile, "r").getChannel()) {
+                        long position = 0;
+                        while (position < in.size()) {
+                            position += in.transferTo(position, in.size() - position, out);
+                        }
+                    }
+                    Files.delete(partFile.toPath());
+                }
+                out.write(ByteBuffer.wrap(FOOTER));
+            }
+            outputFiles.add(outputFile);
+        }
+        LOG.info("Split " + file + " into " + outputFiles);
+        return outputFiles;
+    }
+
+    private List<Map<String, File>> scanMapped(File file, File partPrefix) throws IOException {
+        long size = file.length();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Map<String, File>>> results = new ArrayList<Future<Map<String, File>>>();
+            for (int i = 0; i < threads; i++) {
+                long start = size * i / threads;
+                long end = size * (i + 1) / threads;
+                File partFile = new File(partPrefix.getPath() + "." + i);
+                results.add(executor.submit(() -> scanRange(file, start, end, partFile)));
+            }
+            List<Map<String, File>> parts = new ArrayList<Map<String, File>>();
+            for (Future<Map<String, File>> result : results) {
+                parts.add(result.get());
+            }
+            return parts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while splitting " + file, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Error splitting " + file, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // write the entries starting between start and end, returns taxonId -> part file
+    private Map<String, File> scanRange(File file, long start, long end, File partPrefix)
+        throws IOException {
+        Map<String, FileChannel> outputs = new HashMap<String, FileChannel>();
+        Map<String, File> partFiles = new HashMap<String, File>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            Window window = new Window(raf.getChannel(), windowSize);
+            long position = start;
+            while (true) {
+                long entryStart = window.findEntryStart(position, end);
+                if (entryStart < 0) {
+                    break;
+                }
+                long entryEnd = window.indexOf(ENTRY_END, entryStart);
+                if (entryEnd < 0) {
+                    throw new IOException("End of file inside <entry> in " + file);
+                }
+                entryEnd += ENTRY_END.length;
+                ByteBuffer entry = window.slice(entryStart, entryEnd);
+                String taxonId = taxonId(entry);
+                if (taxonId != null && taxonIds.contains(taxonId)) {
+                    write(entry, taxonId, partPrefix, outputs, partFiles);
+                }
+                position = entryEnd;
+            }
+        } finally {
+            for (FileChannel output : outputs.values()) {
+                output.close();
+            }
+        }
+        return partFiles;
+    }
+
+    private Map<String, File> scanStream(File file, File partPrefix) throws IOException {
+        Map<String, FileChannel> outputs = new HashMap<String, FileChannel>();
+        Map<String, File> partFiles = new HashMap<String, File>();
+        try (InputStream in = CompressedInput.openStream(file)) {
+            EntryScanner scanner = new EntryScanner(in);
+            byte[] fragment;
+            while ((fragment = scanner.next()) != null) {
+                ByteBuffer entry = ByteBuffer.wrap(fragment);
+                String taxonId = taxonId(entry);
+                if (taxonId != null && taxonIds.contains(taxonId)) {
+                    write(entry, taxonId, partPrefix, outputs, partFiles);
+                }
+            }
+        } finally {
+            for (FileChannel output : outputs.values()) {
+                output.close();
+            }
+        }
+        return partFiles;
+    }
+
+    private static void write(ByteBuffer entry, String taxonId, File partPrefix,
+            Map<String, FileChannel> outputs, Map<String, File> partFiles) throws IOException {
+        FileChannel output = outputs.get(taxonId);
+        if (output == null) {
+            File partFile = new File(partPrefix.getParentFile(),
+                    taxonId + partPrefix.getName());
+            output = new FileOutputStream(partFile).getChannel();
+            outputs.put(taxonId, output);
+            partFiles.put(taxonId, partFile);
+        }
+        entry.rewind();
+        while (entry.hasRemaining()) {
+            output.write(entry);
+        }
+        output.write(ByteBuffer.wrap(NEWLINE));
+    }
+
+    /**
+     * @param entry bytes of one entry
+     * @return NCBI taxonomy id of the entry's organism, or null if there isn't one
+     */
+    static String taxonId(ByteBuffer entry) {
+        int limit = entry.limit();
+        // <organism> or <organism attributes>, not <organismHost>
+        int organism = -1;
+        for (int i = indexOf(entry, ORGANISM, 0, limit); i >= 0;
+                i = indexOf(entry, ORGANISM, i + 1, limit)) {
+            int next = i + ORGANISM.length;
+            if (next < limit && isTagEnd(entry.get(next))) {
+                organism = next;
+                break;
+            }
+        }
+        if (organism < 0) {
+            return null;
+        }
+        // only the organism's own ids, not those of an <organismHost> after it
+        int organismEnd = indexOf(entry, ORGANISM_END, organism, limit);
+        if (organismEnd < 0) {
+            return null;
+        }
+        int id = indexOf(entry, TAXONOMY, organism, organismEnd);
+        if (id < 0) {
+            return null;
+        }
+        StringBuilder taxonId = new StringBuilder();
+        for (int i = id + TAXONOMY.length; i < organismEnd && entry.get(i) != '"'; i++) {
+            taxonId.append((char) entry.get(i));
+        }
+        return taxonId.toString();
+    }
+
+    // the byte after an element name in a start tag
+    private static boolean isTagEnd(int b) {
+        return b == '>' || b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    // start of the first match at or after from that ends by to, or -1
+    private static int indexOf(ByteBuffer buffer, byte[] pattern, int from, int to) {
+        int last = to - pattern.length;
+        for (int i = from; i <= last; i++) {
+            int j = 0;
+            while (j < pattern.length && buffer.get(i + j) == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // part of a file too big to map in one go
+    private static final class Window
+    {
+        private final FileChannel channel;
+        private final long size;
+        private final long windowSize;
+        private MappedByteBuffer buffer = null;
+        private long bufferStart = 0;
+
+        private Window(FileChannel channel, long windowSize) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowSize = windowSize;
+        }
+
+        // byte at position, or -1 past the end of the file
+        private int get(long position) throws IOException {
+            if (position >= size) {
+                return -1;
+            }
+            if (buffer == null || position < bufferStart
+                    || position >= bufferStart + buffer.limit()) {
+                map(position, windowSize);
+            }
+            return buffer.get((int) (position - bufferStart)) & 0xff;
+        }
+
+        // the bytes from start to end, mapping them if they aren't all in the window
+        private ByteBuffer slice(long start, long end) throws IOException {
+            if (buffer == null || start < bufferStart || end > bufferStart + buffer.limit()) {
+                map(start, Math.max(windowSize, end - start));
+            }
+            ByteBuffer slice = buffer.duplicate();
+            slice.position((int) (start - bufferStart));
+            slice.limit((int) (end - bufferStart));
+            return slice.slice();
+        }
+
+        private void map(long position, long length) throws IOException {
+            bufferStart = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(length, size - position));
+        }
+
+        // start of the first <entry> beginning at or after from and before end, or -1
+        private long findEntryStart(long from, long end) throws IOException {
+            long start = indexOf(ENTRY_START, from);
+            while (start >= 0 && start < end) {
+                if (isTagEnd(get(start + ENTRY_START.length))) {
+                    return start;
+                }
+                start = indexOf(ENTRY_START, start + 1);
+            }
+            return -1;
+        }
+
+        private long indexOf(byte[] pattern, long from) throws IOException {
+            for (long i = from; i + pattern.length <= size; i++) {
+                int j = 0;
+                while (j < pattern.length && get(i + j) == pattern[j]) {
+                    j++;
+                }
+                if (j == pattern.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class EntryScannerTest extends TestCase
+{
+    private static final String ENTRY1 = "<entry dataset=\"Swiss-Prot\"><accession>P12345</accession>"
+        + "</entry>";
+    private static final String ENTRY2 = "<entry>\n  <accession>Q67890</accession>\n</entry>";
+    private static final String XML = "<?xml version=\"1.0\"?>\n<uniprot>\n  " + ENTRY1
+        + "\n  " + ENTRY2 + "\n<entryList/>\n</uniprot>\n";
+
+    public EntryScannerTest(String arg) {
+        super(arg);
+    }
+
+    public void testEntries() throws Exception {
+        EntryScanner scanner = new EntryScanner(stream(XML, Integer.MAX_VALUE));
+        assertEquals(ENTRY1, next(scanner));
+        assertEquals(XML.indexOf(ENTRY1) + ENTRY1.length(), scanner.getPosition());
+        assertEquals(ENTRY2, next(scanner));
+        assertEquals(XML.indexOf(ENTRY2) + ENTRY2.length(), scanner.getPosition());
+        // <entryList isn't an entry
+        assertNull(scanner.next());
+        assertEquals(XML.length(), scanner.getPosition());
+    }
+
+    public void testSplitReads() throws Exception {
+        // every marker split across reads at some point
+        for (int chunk = 1; chunk <= 11; chunk++) {
+            assertEquals("reads of " + chunk, list(ENTRY1, ENTRY2),
+                    all(new EntryScanner(stream(XML, chunk))));
+        }
+    }
+
+    public void testLargeEntry() throws Exception {
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            sequence.append("ACDEFGHIKLMNPQRSTVWY".charAt(i % 20));
+        }
+        String entry = "<entry><sequence>" + sequence + "</sequence></entry>";
+        String xml = "<uniprot>" + entry + ENTRY2 + "</uniprot>";
+        for (int chunk : new int[] {7, 4096, Integer.MAX_VALUE}) {
+            EntryScanner scanner = new EntryScanner(stream(xml, chunk));
+            assertEquals(entry, next(scanner));
+            assertEquals(xml.indexOf(ENTRY2), scanner.getPosition());
+            assertEquals(ENTRY2, next(scanner));
+            assertNull(scanner.next());
+        }
+    }
+
+    public void testCommentsAndCdata() throws Exception {
+        String entry = "<entry><!-- not the </entry> --><comment><text><![CDATA[a </entry> b]]>"
+            + "</text></comment><!--x--></entry>";
+        String xml = "<uniprot><!-- <entry> --><![CDATA[<entry>]]>" + entry + ENTRY2
+            + "</uniprot>";
+        for (int chunk = 1; chunk <= 11; chunk++) {
+            assertEquals("reads of " + chunk, list(entry, ENTRY2),
+                    all(new EntryScanner(stream(xml, chunk))));
+        }
+    }
+
+    public void testTruncated() throws Exception {
+        for (String xml : new String[] {"<uniprot><entry><accession>P12345</accession>",
+            "<uniprot><entry><!-- </entry>", "<uniprot><entry><![CDATA[</entry>]]"}) {
+            EntryScanner scanner = new EntryScanner(stream(xml, 3));
+            try {
+                scanner.next();
+                fail("Expected an error for " + xml);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    private static List<String> all(EntryScanner scanner) throws IOException {
+        List<String> entries = new ArrayList<>();
+        String entry;
+        while ((entry = next(scanner)) != null) {
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static String next(EntryScanner scanner) throws IOException {
+        byte[] fragment = scanner.next();
+        return (fragment == null) ? null : new String(fragment, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> list(String... entries) {
+        List<String> list = new ArrayList<>();
+        for (String entry : entries) {
+            list.add(entry);
+        }
+        return list;
+    }
+
+    // returns at most chunk bytes from each read
+    private static InputStream stream(String text, final int chunk) {
+        return new FilterInputStream(new ByteArrayInputStream(
+                text.getBytes(StandardCharsets.UTF_8))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, chunk));
+            }
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.model.fulldata.Item;
+
+import junit.framework.TestCase;
+
+public class SprotIndexTest extends TestCase
+{
+    private static final String RESIDUES = "MKVLAAGIVALLLAAGGKKAMSTNPKPQRKTKRNTNRRPQDVKFPGG";
+    private PombeUniprotConverter converter;
+    private File file;
+
+    public SprotIndexTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        converter = new PombeUniprotConverter(
+                new MockItemWriter(new HashMap<String, Item>()), Model.getInstanceByName("genomic"));
+        file = File.createTempFile("4896_uniprot_sprot", ".xml");
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testIndentedSequence() throws Exception {
+        String entry = entry("P00001", "", lines(RESIDUES, 10, "\n    ") + "\n  ");
+        assertSameChecksum(entry, RESIDUES);
+    }
+
+    public void testCrlfSequence() throws Exception {
+        String entry = entry("P00002", "", lines(RESIDUES, 10, "\r\n\t") + "\r\n");
+        assertSameChecksum(entry, RESIDUES);
+    }
+
+    public void testLongSequence() throws Exception {
+        // longer than the parser's buffer, so its text comes in more than one piece
+        StringBuilder residues = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            residues.append(RESIDUES);
+        }
+        String entry = entry("P00003", "", lines(residues.toString(), 60, "\n    ") + "\n  ");
+        assertSameChecksum(entry, residues.toString());
+    }
+
+    public void testFragment() throws Exception {
+        String entry = entry("P00004", " fragment=\"single\"", lines(RESIDUES, 10, "\n    "));
+        String md5checksum = assertSameChecksum(entry, RESIDUES);
+        // not stored, so not in the index either
+        assertFalse(new SprotIndex(file, false).hasSequence(md5checksum));
+        assertTrue(new SprotIndex(file, false).hasAccession("P00004"));
+    }
+
+    // returns the checksum
+    private String assertSameChecksum(String entry, String residues) throws Exception {
+        Files.write(file.toPath(), ("<uniprot>\n" + entry + "\n</uniprot>\n")
+                .getBytes(StandardCharsets.UTF_8));
+        String md5checksum = converter.parseEntry(entry.getBytes(StandardCharsets.UTF_8))
+            .getMd5checksum();
+        assertEquals(SequenceRegistry.md5checksum(residues), md5checksum);
+        assertTrue(new SprotIndex(file, true).hasSequence(md5checksum));
+        return md5checksum;
+    }
+
+    private static String entry(String accession, String attributes, String text) {
+        return "<entry dataset=\"Swiss-Prot\">\n  <accession>" + accession + "</accession>\n"
+            + "  <comment type=\"alternative products\">\n    <isoform>\n      <id>" + accession
+            + "-1</id>\n      <sequence type=\"displayed\"/>\n    </isoform>\n  </comment>\n"
+            + "  <sequence length=\"" + text.length() + "\" mass=\"5000\"" + attributes + ">"
+            + text + "</sequence>\n</entry>";
+    }
+
+    // residues in lines of the given length, each after the separator
+    private static String lines(String residues, int length, String separator) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < residues.length(); i += length) {
+            lines.append(separator).append(residues, i, Math.min(residues.length(), i + length));
+        }
+        return lines.toString();
+    }
+}
@@ -0,0 +1,217 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.model.fulldata.Item;
+import org.intermine.objectstore.ObjectStoreException;
+
+import junit.framework.TestCase;
+
+public class UniprotCheckpointTest extends TestCase
+{
+    private static final String RESIDUES = "MKVLAAGIVALLLAAGGKKAMSTNPKPQRKTKRNTNRRPQDVKFPGG";
+    private File dataDir;
+    private File file;
+
+    public UniprotCheckpointTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        dataDir = Files.createTempDirectory("uniprot-checkpoint").toFile();
+        file = new File(dataDir.getPath() + ".checkpoint");
+    }
+
+    public void tearDown() throws Exception {
+        for (File dataFile : dataDir.listFiles()) {
+            dataFile.delete();
+        }
+        dataDir.delete();
+        file.delete();
+    }
+
+    public void testRecords() throws Exception {
+        UniprotCheckpoint first = new UniprotCheckpoint();
+        first.put("pubs", "1001", "4_1");
+        first.setPosition("a.xml", 100, 2, 5);
+        first.append(file);
+        UniprotCheckpoint second = new UniprotCheckpoint();
+        second.put("pubs", "1002", "4_2");
+        second.setDoneFiles(Collections.singleton("b.xml"));
+        second.setPosition("a.xml", 200, 4, 9);
+        second.append(file);
+        // nothing committed yet
+        assertNull(UniprotCheckpoint.read(file));
+
+        UniprotCheckpoint.appendStored(file, 12, Collections.singletonMap("11", "42"));
+        UniprotCheckpoint checkpoint = UniprotCheckpoint.read(file);
+        assertEquals("a.xml", checkpoint.getFile());
+        assertEquals(200, checkpoint.getOffset());
+        assertEquals(4, checkpoint.getEntryCount());
+        assertEquals(9, checkpoint.getWrites());
+        assertEquals(Collections.singleton("b.xml"), checkpoint.getDoneFiles());
+        assertEquals(2, checkpoint.getMap("pubs").size());
+        assertEquals("4_2", checkpoint.getMap("pubs").get("1002"));
+        assertEquals(12, checkpoint.getStoredWrites());
+        assertEquals("42", checkpoint.getStoredIds().get("11"));
+        assertEquals(file.length(), checkpoint.getLength());
+    }
+
+    public void testKilledRun() throws Exception {
+        UniprotCheckpoint first = new UniprotCheckpoint();
+        first.setPosition("a.xml", 100, 2, 5);
+        first.append(file);
+        UniprotCheckpoint.appendStored(file, 7, Collections.<String, String>emptyMap());
+        long length = file.length();
+        // the resumed run was killed after a checkpoint, and part way through the next one
+        UniprotCheckpoint second = new UniprotCheckpoint();
+        second.put("pubs", "1002", "4_2");
+        second.setPosition("a.xml", 200, 4, 9);
+        second.append(file);
+        Files.write(file.toPath(), "[checkpoint]\nfile\ta.x".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        UniprotCheckpoint checkpoint = UniprotCheckpoint.read(file);
+        assertEquals(100, checkpoint.getOffset());
+        assertEquals(7, checkpoint.getStoredWrites());
+        assertTrue(checkpoint.getMap("pubs").isEmpty());
+        assertEquals(length, checkpoint.getLength());
+        checkpoint.truncate(file);
+        assertEquals(length, file.length());
+    }
+
+    public void testLaterCheckpoint() throws Exception {
+        UniprotCheckpoint first = new UniprotCheckpoint();
+        first.put("genes", "SPAC1.01", "2_1");
+        first.setPosition("a.xml", 100, 2, 5);
+        first.append(file);
+        UniprotCheckpoint.appendStored(file, 7, Collections.singletonMap("6", "42"));
+        // the resumed run passes the writes it skipped, then starts another taxon
+        UniprotCheckpoint second = new UniprotCheckpoint();
+        second.setPosition(null, 0, 0, 10);
+        second.append(file);
+        UniprotCheckpoint third = new UniprotCheckpoint();
+        third.reset("genes");
+        third.put("genes", "SPBC1.01", "2_2");
+        third.setPosition("b.xml", 100, 2, 12);
+        third.append(file);
+        UniprotCheckpoint.appendStored(file, 12, Collections.<String, String>emptyMap());
+
+        UniprotCheckpoint checkpoint = UniprotCheckpoint.read(file);
+        assertEquals("b.xml", checkpoint.getFile());
+        assertEquals(12, checkpoint.getStoredWrites());
+        assertTrue(checkpoint.getStoredIds().isEmpty());
+        assertEquals(Collections.singletonMap("SPBC1.01", "2_2"), checkpoint.getMap("genes"));
+    }
+
+    public void testResume() throws Exception {
+        StringBuilder xml = new StringBuilder("<uniprot>\n");
+        for (int i = 1; i <= 6; i++) {
+            xml.append(entry(i));
+        }
+        xml.append("</uniprot>\n");
+        Files.write(new File(dataDir, "4896_uniprot_sprot.xml").toPath(),
+                xml.toString().getBytes(StandardCharsets.UTF_8));
+        Set<org.intermine.xml.full.Item> expected = convert(-1).getItems();
+        // items the converter stores before it knows it is resuming, merged when integrated
+        FailingItemWriter constructed = new FailingItemWriter(-1);
+        new PombeUniprotConverter(constructed, Model.getInstanceByName("genomic"));
+        int constructorItems = constructed.getItems().size();
+
+        // fail at every write after the constructor's, then resume
+        for (int failAt = constructed.writes + 1; failAt <= expected.size(); failAt++) {
+            file.delete();
+            FailingItemWriter failed = convert(failAt);
+            assertTrue(failed.failed);
+            MockItemWriter resumed = convert(-1);
+            Set<org.intermine.xml.full.Item> items = new HashSet<org.intermine.xml.full.Item>();
+            items.addAll(failed.getItems());
+            items.addAll(resumed.getItems());
+            assertEquals("failed at write " + failAt, expected, items);
+            assertEquals("duplicates after failing at write " + failAt,
+                    expected.size() + constructorItems,
+                    failed.getItems().size() + resumed.getItems().size());
+            assertFalse(file.exists());
+        }
+    }
+
+    // failAt is the write to fail, -1 to not fail
+    private FailingItemWriter convert(int failAt) throws Exception {
+        FailingItemWriter writer = new FailingItemWriter(failAt);
+        PombeUniprotConverter converter = new PombeUniprotConverter(writer,
+                Model.getInstanceByName("genomic"));
+        converter.rslv = new IdResolver();
+        converter.setUniprotOrganisms("4896");
+        converter.setCheckpointFile(file.getPath());
+        converter.setCheckpointInterval("2");
+        try {
+            converter.process(dataDir);
+        } catch (RuntimeException e) {
+            if (!writer.failed) {
+                throw e;
+            }
+        } finally {
+            // as the converter task does, before closing the writer
+            converter.close();
+        }
+        return writer;
+    }
+
+    private static String entry(int i) {
+        String residues = RESIDUES.substring(i) + RESIDUES.substring(0, i);
+        return "<entry dataset=\"Swiss-Prot\" version=\"1\">\n"
+            + "  <accession>P0000" + i + "</accession>\n"
+            + "  <name>TEST" + i + "_SCHPO</name>\n"
+            + "  <protein>\n    <recommendedName>\n      <fullName>Test protein " + i
+            + "</fullName>\n    </recommendedName>\n  </protein>\n"
+            + "  <organism>\n    <name type=\"scientific\">Schizosaccharomyces pombe</name>\n"
+            + "    <dbReference type=\"NCBI Taxonomy\" id=\"4896\"/>\n  </organism>\n"
+            + "  <reference key=\"1\">\n    <citation type=\"journal article\">\n"
+            + "      <dbReference type=\"PubMed\" id=\"100" + (i % 3) + "\"/>\n"
+            + "    </citation>\n  </reference>\n"
+            + "  <keyword id=\"KW-000" + (i % 2) + "\">Keyword " + (i % 2) + "</keyword>\n"
+            + "  <sequence length=\"" + residues.length() + "\" mass=\"5000\">" + residues
+            + "</sequence>\n</entry>\n";
+    }
+
+    // fails at the given write, as a database error would
+    private static class FailingItemWriter extends MockItemWriter
+    {
+        private final int failAt;
+        private int writes = 0;
+        private boolean failed = false;
+
+        FailingItemWriter(int failAt) {
+            super(new HashMap<String, Item>());
+            this.failAt = failAt;
+        }
+
+        @Override
+        public Integer store(Item item) {
+            if (++writes == failAt) {
+                failed = true;
+                throw new RuntimeException(new ObjectStoreException("Failed at write " + failAt));
+            }
+            return super.store(item);
+        }
+    }
+}
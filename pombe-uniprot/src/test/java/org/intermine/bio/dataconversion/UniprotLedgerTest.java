@@ -0,0 +1,85 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+public class UniprotLedgerTest extends TestCase
+{
+    private File file;
+
+    public UniprotLedgerTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("uniprot", ".ledger");
+        file.delete();
+    }
+
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testUnchanged() throws Exception {
+        UniprotLedger first = new UniprotLedger(file);
+        assertTrue(first.isChanged(entry("P00001", "1")));
+        first.addSequence("P00001", "P00001", "4896", "aaa");
+        first.addSequence("P00001", "P00001-2", "4896", "bbb");
+        assertTrue(first.isChanged(entry("P00002", "1")));
+        first.addSequence("P00002", "P00002", "4896", "ccc");
+        first.save(file);
+
+        UniprotLedger second = new UniprotLedger(file);
+        assertFalse(second.isChanged(entry("P00001", "1")));
+        assertTrue(second.isChanged(entry("P00002", "2")));
+        assertTrue(second.isUnchanged("P00001"));
+        assertFalse(second.isUnchanged("P00002"));
+        assertFalse(second.isUnchanged("P00003"));
+        // the proteins of the unchanged entry, isoforms included
+        assertEquals("P00001", second.getSkippedProtein("4896", "aaa"));
+        assertEquals("P00001-2", second.getSkippedProtein("4896", "bbb"));
+        assertNull(second.getSkippedProtein("4896", "ccc"));
+        assertNull(second.getSkippedProtein("4932", "aaa"));
+        // the changed entry was a duplicate this time
+        second.save(file);
+
+        // the unchanged entry's sequences are kept for the load after
+        UniprotLedger third = new UniprotLedger(file);
+        assertFalse(third.isChanged(entry("P00001", "1")));
+        assertFalse(third.isChanged(entry("P00002", "2")));
+        assertEquals("P00001-2", third.getSkippedProtein("4896", "bbb"));
+        assertNull(third.getSkippedProtein("4896", "ccc"));
+    }
+
+    public void testWithoutSequences() throws Exception {
+        // as written before sequences were kept
+        UniprotLedger first = new UniprotLedger(file);
+        first.isChanged(entry("P00001", "1"));
+        first.save(file);
+        String line = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertEquals(2, line.trim().split("\t").length - 1);
+
+        UniprotLedger second = new UniprotLedger(file);
+        assertFalse(second.isChanged(entry("P00001", "1")));
+        assertNull(second.getSkippedProtein("4896", "aaa"));
+    }
+
+    private static byte[] entry(String accession, String version) {
+        return ("<entry dataset=\"Swiss-Prot\" version=\"" + version + "\">\n"
+            + "  <accession>" + accession + "</accession>\n"
+            + "</entry>").getBytes(StandardCharsets.UTF_8);
+    }
+}
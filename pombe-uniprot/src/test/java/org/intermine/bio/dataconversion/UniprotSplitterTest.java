@@ -0,0 +1,151 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2021 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+public class UniprotSplitterTest extends TestCase
+{
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<uniprot xmlns=\"http://uniprot.org/uniprot\">\n";
+    private static final String FOOTER = "</uniprot>\n";
+    private static final Set<String> TAXON_IDS = new HashSet<String>(Arrays.asList("4896",
+            "9606"));
+    private File dir;
+
+    public UniprotSplitterTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("uniprot-splitter").toFile();
+    }
+
+    public void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testTaxonId() throws Exception {
+        assertEquals("4896", taxonId(entry("P00001", "4896", null)));
+        assertEquals("4896", taxonId("<entry><organism>\n<dbReference type=\"NCBI Taxonomy\""
+                + " id=\"4896\"/>\n</organism></entry>"));
+        assertEquals("4896", taxonId("<entry><organism\nkey=\"1\"><dbReference"
+                + " type=\"NCBI Taxonomy\" id=\"4896\"/></organism></entry>"));
+        // the host's id before or after the organism's isn't the organism's
+        assertEquals("4896", taxonId("<entry><organismHost><dbReference type=\"NCBI Taxonomy\""
+                + " id=\"9606\"/></organismHost>" + organism("4896") + "</entry>"));
+        assertEquals("4896", taxonId(entry("P00001", "4896", "9606")));
+        assertNull(taxonId("<entry><organism><name>unknown</name></organism><organismHost>"
+                + "<dbReference type=\"NCBI Taxonomy\" id=\"9606\"/></organismHost></entry>"));
+        assertNull(taxonId("<entry><accession>P00001</accession></entry>"));
+        // not closed
+        assertNull(taxonId("<entry><organism><dbReference type=\"NCBI Taxonomy\" id=\"4896\"/>"));
+    }
+
+    public void testSplitMapped() throws Exception {
+        List<String> entries = entries();
+        File file = new File(dir, "uniprot_sprot.xml");
+        write(file, HEADER + String.join("\n", entries) + "\n" + FOOTER, false);
+        // ranges and windows starting inside entries and inside <entry and </entry>
+        for (int threads : new int[] {1, 3, 7}) {
+            for (long windowSize : new long[] {16, 100, 333, 1024 * 1024}) {
+                String message = threads + " threads, window of " + windowSize;
+                UniprotSplitter splitter = new UniprotSplitter(TAXON_IDS, threads, windowSize);
+                List<File> files = splitter.split(file, "sprot", dir);
+                assertEquals(message, 2, files.size());
+                assertEquals(message, expected(entries, "4896"), read(files.get(0)));
+                assertEquals(message, expected(entries, "9606"), read(files.get(1)));
+                assertEquals(message, 3, dir.listFiles().length);
+            }
+        }
+    }
+
+    public void testSplitCompressed() throws Exception {
+        List<String> entries = entries();
+        File file = new File(dir, "uniprot_trembl.xml.gz");
+        write(file, HEADER + String.join("\n", entries) + "\n" + FOOTER, true);
+        List<File> files = new UniprotSplitter(TAXON_IDS, 4).split(file, "trembl", dir);
+        assertEquals(new File(dir, "4896_uniprot_trembl.xml"), files.get(0));
+        assertEquals(expected(entries, "4896"), read(files.get(0)));
+        assertEquals(expected(entries, "9606"), read(files.get(1)));
+    }
+
+    // entries of different lengths and organisms, some with hosts
+    private static List<String> entries() {
+        String[] taxonIds = {"4896", "9606", "10090", "4896", "4896", "9606"};
+        List<String> entries = new ArrayList<String>();
+        for (int i = 0; i < 60; i++) {
+            String host = (i % 5 == 0) ? taxonIds[(i + 1) % taxonIds.length] : null;
+            entries.add(entry(String.format("P%05d", i), taxonIds[i % taxonIds.length], host));
+        }
+        return entries;
+    }
+
+    private static String entry(String accession, String taxonId, String hostTaxonId) {
+        StringBuilder entry = new StringBuilder("<entry dataset=\"Swiss-Prot\">\n  <accession>")
+            .append(accession).append("</accession>\n  ").append(organism(taxonId));
+        if (hostTaxonId != null) {
+            entry.append("\n  <organismHost>\n    <dbReference type=\"NCBI Taxonomy\" id=\"")
+                .append(hostTaxonId).append("\"/>\n  </organismHost>");
+        }
+        entry.append("\n  <sequence length=\"7\">");
+        for (int i = 0; i < accession.charAt(5) - '0'; i++) {
+            entry.append("\nMKVLAAG");
+        }
+        return entry.append("\n  </sequence>\n</entry>").toString();
+    }
+
+    private static String organism(String taxonId) {
+        return "<organism>\n    <name type=\"scientific\">x</name>\n"
+            + "    <dbReference type=\"NCBI Taxonomy\" id=\"" + taxonId + "\"/>\n  </organism>";
+    }
+
+    private static String expected(List<String> entries, String taxonId) {
+        StringBuilder expected = new StringBuilder(HEADER);
+        for (String entry : entries) {
+            if (taxonId.equals(taxonId(entry))) {
+                expected.append(entry).append('\n');
+            }
+        }
+        return expected.append(FOOTER).toString();
+    }
+
+    private static String taxonId(String entry) {
+        return UniprotSplitter.taxonId(ByteBuffer.wrap(entry.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void write(File file, String text, boolean compress) throws Exception {
+        try (OutputStream out = compress ? new GZIPOutputStream(new FileOutputStream(file))
+                : new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}